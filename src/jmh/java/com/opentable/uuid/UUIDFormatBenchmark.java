@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting UUIDs as text and binary.  The {@code byte[]} and {@link StringBuilder} variants reuse one buffer,
+ * which is what {@code -prof gc} should show as allocation free, apart from the {@link String} that
+ * {@link FastUUID#appendTo(UUID, StringBuilder)} copies.  The {@code jdk*} variants are the baselines:
+ * {@link UUID#toString()} and copying its result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UUIDFormatBenchmark {
+    private static final int COUNT = 1024;
+
+    private final UUID[] uuids = new UUID[COUNT];
+    private final byte[] buffer = new byte[64];
+    private final StringBuilder builder = new StringBuilder(64);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        for (int i = 0; i < COUNT; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+    }
+
+    private UUID next() {
+        return uuids[next++ & (COUNT - 1)];
+    }
+
+    @Benchmark
+    public String jdkToString() {
+        return next().toString();
+    }
+
+    @Benchmark
+    public String fastToString() {
+        return FastUUID.toString(next());
+    }
+
+    @Benchmark
+    public StringBuilder jdkAppendTo() {
+        builder.setLength(0);
+        return builder.append(next().toString());
+    }
+
+    @Benchmark
+    public StringBuilder fastAppendTo() {
+        builder.setLength(0);
+        return FastUUID.appendTo(next(), builder);
+    }
+
+    @Benchmark
+    public byte[] jdkGetBytes() {
+        return next().toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public byte[] fastWriteAscii() {
+        FastUUID.writeAscii(next(), buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64UUID.encode(next());
+    }
+
+    @Benchmark
+    public String base32Encode() {
+        return Base32UUID.encode(next());
+    }
+
+    @Benchmark
+    public byte[] base64EncodeBytes() {
+        final UUID uuid = next();
+        Base64UUID.encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public StringBuilder base32AppendTo() {
+        builder.setLength(0);
+        return Base32UUID.appendTo(next(), builder);
+    }
+
+    @Benchmark
+    public byte[] binaryWrite() {
+        BinaryUUID.write(next(), buffer, 0);
+        return buffer;
+    }
+}
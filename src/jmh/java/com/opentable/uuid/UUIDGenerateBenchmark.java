@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Minting UUIDs.  Contention is the interesting part, so run at several thread counts, e.g.
+ * {@code -Djmh.args="UUIDGenerateBenchmark -t 16 -prof gc"} for each of 1, 4, 16 and 64.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UUIDGenerateBenchmark {
+    private static final int BATCH = 64;
+
+    private final UUIDv7Generator generator = UUIDv7Generator.create();
+
+    @State(Scope.Thread)
+    public static class Batch {
+        final long[] msb = new long[BATCH];
+        final long[] lsb = new long[BATCH];
+    }
+
+    @Benchmark
+    public UUID jdkRandomUUID() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID v7Next() {
+        return generator.next();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long[] v7NextN(Batch batch) {
+        generator.nextN(batch.msb, batch.lsb);
+        return batch.lsb;
+    }
+}
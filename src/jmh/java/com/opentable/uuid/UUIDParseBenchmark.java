@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing UUIDs from text and binary: the JDK against the codecs in this package.
+ * Inputs cycle through 1024 random UUIDs, so branch predictors cannot learn a single value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UUIDParseBenchmark {
+    private static final int COUNT = 1024;
+    private static final String PREFIX = "GET /restaurants/";
+
+    private final String[] canonical = new String[COUNT];
+    private final String[] invalid = new String[COUNT];
+    private final String[] requestLines = new String[COUNT];
+    private final String[] base64 = new String[COUNT];
+    private final String[] base32 = new String[COUNT];
+    private final byte[] ascii = new byte[COUNT * FastUUID.UUID_LENGTH];
+    private final byte[] binary = new byte[COUNT * BinaryUUID.BYTES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        for (int i = 0; i < COUNT; i++) {
+            final UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            canonical[i] = uuid.toString();
+            // Bad last digit: both parsers must read the whole input before rejecting it
+            invalid[i] = canonical[i].substring(0, FastUUID.UUID_LENGTH - 1) + 'g';
+            requestLines[i] = PREFIX + canonical[i] + "/menu HTTP/1.1";
+            base64[i] = Base64UUID.encode(uuid);
+            base32[i] = Base32UUID.encode(uuid);
+            FastUUID.writeAscii(uuid, ascii, i * FastUUID.UUID_LENGTH);
+            BinaryUUID.write(uuid, binary, i * BinaryUUID.BYTES);
+        }
+    }
+
+    private int next() {
+        return next++ & (COUNT - 1);
+    }
+
+    @Benchmark
+    public UUID jdkFromString() {
+        return UUID.fromString(canonical[next()]);
+    }
+
+    @Benchmark
+    public UUID fastFromString() {
+        return FastUUID.fromString(canonical[next()]);
+    }
+
+    @Benchmark
+    public UUID jdkInvalid() {
+        try {
+            return UUID.fromString(invalid[next()]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public UUID fastInvalid() {
+        try {
+            return FastUUID.fromString(invalid[next()]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public UUID jdkSubrange() {
+        final String line = requestLines[next()];
+        return UUID.fromString(line.substring(PREFIX.length(), PREFIX.length() + FastUUID.UUID_LENGTH));
+    }
+
+    @Benchmark
+    public UUID fastSubrange() {
+        return FastUUID.fromCharSequence(requestLines[next()], PREFIX.length(), PREFIX.length() + FastUUID.UUID_LENGTH);
+    }
+
+    @Benchmark
+    public UUID fastReadAscii() {
+        return FastUUID.readAscii(ascii, next() * FastUUID.UUID_LENGTH);
+    }
+
+    @Benchmark
+    public UUID base64Decode() {
+        return Base64UUID.decode(base64[next()]);
+    }
+
+    @Benchmark
+    public UUID base32Decode() {
+        return Base32UUID.decode(base32[next()]);
+    }
+
+    @Benchmark
+    public UUID binaryRead() {
+        return BinaryUUID.read(binary, next() * BinaryUUID.BYTES);
+    }
+
+    @Benchmark
+    public long binaryReadHalves() {
+        final int offset = next() * BinaryUUID.BYTES;
+        return BinaryUUID.getMostSignificantBits(binary, offset) ^ BinaryUUID.getLeastSignificantBits(binary, offset);
+    }
+}
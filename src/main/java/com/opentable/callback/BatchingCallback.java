@@ -14,6 +14,7 @@
 package com.opentable.callback;
 
 import java.io.Closeable;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -22,6 +23,8 @@ import java.util.concurrent.ExecutorService;
 
 import com.google.common.base.Throwables;
 
+import com.opentable.util.LogLinearHistogram;
+
 /**
  * Collect incoming items into batches of a fixed size, and invoke
  * a delegate callback whenever a complete batch is available.
@@ -39,6 +42,7 @@ public class BatchingCallback<T> implements Callback<T>, Closeable
     private final BlockingQueue<T> list;
     private final Callback<? super List<T>> out;
     private final int size;
+    private volatile LatencyTracker latency;
 
     /**
      * Create a batching callback. It allows you to add items of type T one at a time.
@@ -91,6 +95,28 @@ public class BatchingCallback<T> implements Callback<T>, Closeable
         return new ExecutorBatchingCallback<T>(size, executor, out, failFast);
     }
 
+    /**
+     * Collect {@code <T>} into a buffer, and schedule the given callback with the given executor
+     * whenever the buffer is full, as {@link #batchInto(int, ExecutorService, Callback, boolean)}.
+     * Each batch must finish within {@code batchTimeout}; a batch that overruns is cancelled, interrupting
+     * the thread running it, its stack is logged, and it is counted as a failure with a
+     * {@link java.util.concurrent.TimeoutException}.
+     *
+     * @param size the size of the buffer
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to on commit
+     * @param failFast rethrow the first exception encountered and throw error for all future invocations if true,
+     *  if false we only throw one exception at the end that contains all the other exceptions
+     * @param batchTimeout how long a single batch may run before it is cancelled
+     */
+    public static <T> BatchingCallback<T> batchInto(int size, ExecutorService executor, Callback<? super List<T>> out, boolean failFast, Duration batchTimeout)
+    {
+        if (batchTimeout == null) {
+            throw new IllegalArgumentException("Null batch timeout");
+        }
+        return new ExecutorBatchingCallback<T>(size, executor, out, failFast, batchTimeout);
+    }
+
     /**
      * Add an item to the buffer.  May cause a commit if the buffer is full.
      * @param item to add to the buffer
@@ -99,11 +125,57 @@ public class BatchingCallback<T> implements Callback<T>, Closeable
     @Override
     public void call(T item) throws CallbackRefusedException
     {
+        final LatencyTracker tracker = latency;
+        if (tracker != null) {
+            while (!tracker.offer(list, item)) {
+                commitInternal();
+            }
+            return;
+        }
         while (!list.offer(item)) {
             commitInternal();
         }
     }
 
+    /**
+     * Record how long items wait in this callback before they are handed to the delegate.
+     * Each item's enqueue time is kept in a primitive array alongside the buffer; when a batch is
+     * handed over, every item's wait is recorded in {@link #getSojournTimes()} and the wait of the
+     * batch's oldest item in {@link #getOldestItemAges()}, both in nanoseconds.
+     * Must be called before any items are added.
+     * @return this callback
+     */
+    public BatchingCallback<T> trackLatency()
+    {
+        if (!list.isEmpty()) {
+            throw new IllegalStateException("Latency tracking must be enabled before items are added");
+        }
+        if (latency == null) {
+            latency = new LatencyTracker(size);
+        }
+        return this;
+    }
+
+    /**
+     * Get the time each item waited between {@link #call(Object)} and being handed to the delegate.
+     * @return histogram of item waits in nanoseconds
+     * @throws IllegalStateException if {@link #trackLatency()} was not called
+     */
+    public LogLinearHistogram getSojournTimes()
+    {
+        return getLatency().sojourn;
+    }
+
+    /**
+     * Get the age of the oldest item in each batch when it was handed to the delegate.
+     * @return histogram of oldest item ages in nanoseconds
+     * @throws IllegalStateException if {@link #trackLatency()} was not called
+     */
+    public LogLinearHistogram getOldestItemAges()
+    {
+        return getLatency().oldest;
+    }
+
     /**
      * Alternate method of committing, for use with {@code try-with-resources}.
      */
@@ -113,6 +185,18 @@ public class BatchingCallback<T> implements Callback<T>, Closeable
         commit();
     }
 
+    /**
+     * Commit, waiting at most {@code timeout} for batches that are still being processed.
+     * Batches running asynchronously past the deadline are cancelled and reported as failures,
+     * so shutdown latency is bounded even if the delegate hangs.  Synchronous batching
+     * callbacks run the delegate on the calling thread, so this is the same as {@link #close()}.
+     * @param timeout the maximum time to wait for in-flight batches
+     */
+    public void close(Duration timeout)
+    {
+        commit();
+    }
+
     /**
      * Explicitly flush the buffer, even if it is not full.
      * @return true if the flush succeeds, false if the delegate throws {@code CallbackRefusedException}
@@ -136,10 +220,24 @@ public class BatchingCallback<T> implements Callback<T>, Closeable
         return out;
     }
 
+    /**
+     * Get the number of items collected into each batch
+     * @return the batch size
+     */
+    int getSize()
+    {
+        return size;
+    }
+
     private void commitInternal() throws CallbackRefusedException
     {
         final List<T> outList = new ArrayList<>(size);
-        list.drainTo(outList);
+        final LatencyTracker tracker = latency;
+        if (tracker == null) {
+            list.drainTo(outList);
+        } else {
+            tracker.drain(list, outList);
+        }
         if (!outList.isEmpty()) {
             try {
                 out.call(outList);
@@ -149,4 +247,55 @@ public class BatchingCallback<T> implements Callback<T>, Closeable
             }
         }
     }
+
+    private LatencyTracker getLatency()
+    {
+        final LatencyTracker tracker = latency;
+        if (tracker == null) {
+            throw new IllegalStateException("Latency tracking is not enabled");
+        }
+        return tracker;
+    }
+
+    /**
+     * Enqueue ticks for the buffered items, in a ring kept in step with the buffer by holding
+     * this tracker's lock across each offer and drain.
+     */
+    private static final class LatencyTracker
+    {
+        private final long[] enqueued;
+        private final LogLinearHistogram sojourn = new LogLinearHistogram();
+        private final LogLinearHistogram oldest = new LogLinearHistogram();
+        private int head;
+        private int tail;
+
+        LatencyTracker(int size)
+        {
+            enqueued = new long[size];
+        }
+
+        synchronized <T> boolean offer(BlockingQueue<T> list, T item)
+        {
+            if (!list.offer(item)) {
+                return false;
+            }
+            enqueued[tail] = System.nanoTime();
+            tail = tail + 1 == enqueued.length ? 0 : tail + 1;
+            return true;
+        }
+
+        synchronized <T> void drain(BlockingQueue<T> list, List<T> outList)
+        {
+            final int n = list.drainTo(outList);
+            if (n == 0) {
+                return;
+            }
+            final long now = System.nanoTime();
+            oldest.record(now - enqueued[head]);
+            for (int i = 0; i < n; i++) {
+                sojourn.record(now - enqueued[head]);
+                head = head + 1 == enqueued.length ? 0 : head + 1;
+            }
+        }
+    }
 }
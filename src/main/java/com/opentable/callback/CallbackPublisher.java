@@ -0,0 +1,277 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link Callback} which republishes its items to a single {@link Flow.Subscriber}.
+ * Nothing is buffered: {@link #call(Object)} blocks until the subscriber has signalled demand
+ * with {@link Flow.Subscription#request(long)}, and once the subscriber cancels, or the publisher is
+ * closed or failed, every further call throws {@link CallbackRefusedException}.
+ * <p>
+ * {@link #batches()} adapts the publisher to accept whole batches, so it may be used as the
+ * sink of a {@link BatchingCallback}.  A batch is emitted against outstanding demand in bulk
+ * rather than negotiating every item on its own.
+ * <pre>
+ * CallbackPublisher&lt;String&gt; publisher = CallbackPublisher.create();
+ * publisher.subscribe(subscriber);
+ * try (BatchingCallback&lt;String&gt; callback = BatchingCallback.batchInto(100, publisher.batches())) {
+ *     doQuery(Queries.allItems(), callback);
+ * }
+ * publisher.close();
+ * </pre>
+ *
+ * @param <T> the type of item to publish
+ */
+@ThreadSafe
+public class CallbackPublisher<T> implements Flow.Publisher<T>, Callback<T>, Closeable
+{
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition demandAvailable = lock.newCondition();
+
+    private Flow.Subscriber<? super T> subscriber;
+    private long demand;
+    private boolean done;
+    private volatile boolean cancelled;
+
+    CallbackPublisher()
+    {
+    }
+
+    /**
+     * Create a publisher that has no subscriber yet.  Calls block until one subscribes and requests items.
+     * @param <T> the type of item to publish
+     * @return the new publisher
+     */
+    public static <T> CallbackPublisher<T> create()
+    {
+        return new CallbackPublisher<>();
+    }
+
+    /**
+     * Attach the subscriber.  Only a single subscriber is supported; any further subscriber is rejected
+     * with an {@link IllegalStateException}.  Subscribing after {@link #close()} completes immediately.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> s)
+    {
+        if (s == null) {
+            throw new NullPointerException("Null subscriber");
+        }
+        lock.lock();
+        try {
+            if (subscriber != null) {
+                s.onSubscribe(CancelledSubscription.INSTANCE);
+                s.onError(new IllegalStateException("CallbackPublisher supports only a single subscriber"));
+                return;
+            }
+            subscriber = s;
+            // Signals to the subscriber are issued under the lock, which keeps them serial.
+            s.onSubscribe(new PublisherSubscription());
+            if (done) {
+                s.onComplete();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publish a single item, waiting for the subscriber to request it.
+     * @param item the item to publish
+     * @throws CallbackRefusedException if the subscriber has cancelled or the publisher is closed
+     * @throws InterruptedException if interrupted while waiting for demand
+     */
+    @Override
+    public void call(T item) throws CallbackRefusedException, InterruptedException
+    {
+        lock.lockInterruptibly();
+        try {
+            awaitDemand();
+            if (demand != Long.MAX_VALUE) {
+                demand--;
+            }
+            subscriber.onNext(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publish every item in the collection, in iteration order.  Items are emitted in runs
+     * as large as the outstanding demand allows.
+     * @param items the items to publish
+     * @throws CallbackRefusedException if the subscriber cancels, or the publisher is closed, before all items are published
+     * @throws InterruptedException if interrupted while waiting for demand
+     */
+    public void callAll(Collection<? extends T> items) throws CallbackRefusedException, InterruptedException
+    {
+        lock.lockInterruptibly();
+        try {
+            final Iterator<? extends T> iterator = items.iterator();
+            long remaining = items.size();
+            while (remaining > 0) {
+                awaitDemand();
+                final long run = Math.min(demand, remaining);
+                if (demand != Long.MAX_VALUE) {
+                    demand -= run;
+                }
+                remaining -= run;
+                for (long i = 0; i < run; i++) {
+                    if (cancelled) {
+                        throw new CallbackRefusedException();
+                    }
+                    subscriber.onNext(iterator.next());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * View this publisher as a callback of batches, suitable as the output of a {@link BatchingCallback}.
+     * @return a callback that publishes each batch with {@link #callAll(Collection)}
+     */
+    public Callback<List<T>> batches()
+    {
+        return this::callAll;
+    }
+
+    /**
+     * Signal completion to the subscriber.  Further calls will be rejected.
+     */
+    @Override
+    public void close()
+    {
+        terminate(null);
+    }
+
+    /**
+     * Signal an error to the subscriber.  Further calls will be rejected.
+     * @param cause the failure to pass to {@link Flow.Subscriber#onError(Throwable)}
+     */
+    public void fail(Throwable cause)
+    {
+        if (cause == null) {
+            throw new NullPointerException("Null cause");
+        }
+        terminate(cause);
+    }
+
+    /**
+     * @return true if the subscriber has cancelled its subscription
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    private void terminate(Throwable cause)
+    {
+        lock.lock();
+        try {
+            if (done) {
+                return;
+            }
+            done = true;
+            demandAvailable.signalAll();
+            if (subscriber != null && !cancelled) {
+                if (cause == null) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(cause);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDemand() throws CallbackRefusedException, InterruptedException
+    {
+        while (demand == 0 && !cancelled && !done) {
+            demandAvailable.await();
+        }
+        if (cancelled || done) {
+            throw new CallbackRefusedException();
+        }
+    }
+
+    /**
+     * The subscription handed to our subscriber; demand is accumulated with saturation at {@link Long#MAX_VALUE}.
+     */
+    private class PublisherSubscription implements Flow.Subscription
+    {
+        @Override
+        public void request(long n)
+        {
+            lock.lock();
+            try {
+                if (cancelled || done) {
+                    return;
+                }
+                if (n <= 0) {
+                    cancelled = true;
+                    demandAvailable.signalAll();
+                    subscriber.onError(new IllegalArgumentException("Requested " + n + " items, must be positive"));
+                    return;
+                }
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                demandAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            lock.lock();
+            try {
+                demandAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Subscription handed to rejected subscribers.
+     */
+    private enum CancelledSubscription implements Flow.Subscription
+    {
+        INSTANCE;
+
+        @Override
+        public void request(long n)
+        {
+        }
+
+        @Override
+        public void cancel()
+        {
+        }
+    }
+}
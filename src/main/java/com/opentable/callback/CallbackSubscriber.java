@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Flow.Subscriber} which feeds every received item into a {@link Callback}.
+ * At most {@code prefetch} items are requested at a time, so a slow callback applies backpressure
+ * to the publisher instead of being buffered for.  Demand is replenished in bulk once three quarters
+ * of the outstanding request has been consumed.
+ * <p>
+ * If the callback throws {@link CallbackRefusedException} the subscription is cancelled and the
+ * subscriber completes normally; any other exception cancels the subscription and completes it exceptionally.
+ *
+ * @param <T> the type of item to consume
+ */
+public class CallbackSubscriber<T> implements Flow.Subscriber<T>
+{
+    private static final Logger LOG = LoggerFactory.getLogger(CallbackSubscriber.class);
+
+    private final Callback<? super T> callback;
+    private final BatchingCallback<?> batcher;
+    private final int prefetch;
+    private final int limit;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private Flow.Subscription subscription;
+    private int consumed;
+    private boolean stopped;
+
+    /**
+     * Create a callback subscriber.
+     * @param callback the callback to invoke for each item
+     * @param batcher if not null, committed when the publisher completes or fails
+     * @param prefetch how many items to request at a time. Must be greater than 0.
+     */
+    CallbackSubscriber(Callback<? super T> callback, BatchingCallback<?> batcher, int prefetch)
+    {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("Prefetch must be positive, was " + prefetch);
+        }
+        if (callback == null) {
+            throw new IllegalArgumentException("Null callback");
+        }
+        this.callback = callback;
+        this.batcher = batcher;
+        this.prefetch = prefetch;
+        this.limit = prefetch - (prefetch >> 2);
+    }
+
+    /**
+     * Subscribe a callback, requesting up to {@code prefetch} items ahead.
+     * @param callback the callback to invoke for each item
+     * @param prefetch how many items to request at a time
+     * @return the subscriber
+     */
+    public static <T> CallbackSubscriber<T> into(Callback<? super T> callback, int prefetch)
+    {
+        return new CallbackSubscriber<>(callback, null, prefetch);
+    }
+
+    /**
+     * Subscribe a batching callback.  Demand is requested a batch at a time, and the batcher is
+     * committed when the publisher completes or fails.
+     * @param batcher the batching callback to feed
+     * @return the subscriber
+     */
+    public static <T> CallbackSubscriber<T> into(BatchingCallback<T> batcher)
+    {
+        return new CallbackSubscriber<>(batcher, batcher, batcher.getSize());
+    }
+
+    /**
+     * A future which is completed when the subscription ends: normally on completion or callback refusal,
+     * exceptionally when the publisher signals an error or the callback fails.
+     * @return the completion future
+     */
+    public CompletableFuture<Void> getCompletion()
+    {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s)
+    {
+        if (subscription != null) {
+            s.cancel();
+            return;
+        }
+        subscription = s;
+        s.request(prefetch);
+    }
+
+    @Override
+    public void onNext(T item)
+    {
+        if (stopped) {
+            return;
+        }
+        try {
+            callback.call(item);
+        } catch (CallbackRefusedException e) {
+            LOG.trace("callback refused", e);
+            stop(null);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(e);
+            return;
+        } catch (Exception e) {
+            stop(e);
+            return;
+        }
+        if (++consumed == limit) {
+            consumed = 0;
+            subscription.request(limit);
+        }
+    }
+
+    /**
+     * Commit the batcher, if any, so the items received before the error are not lost, then complete
+     * exceptionally with the publisher's error.  A failure to commit is added to it as suppressed.
+     */
+    @Override
+    public void onError(Throwable t)
+    {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            if (batcher != null) {
+                batcher.commit();
+            }
+        } catch (RuntimeException e) {
+            t.addSuppressed(e);
+        }
+        completion.completeExceptionally(t);
+    }
+
+    @Override
+    public void onComplete()
+    {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            if (batcher != null) {
+                batcher.commit();
+            }
+            completion.complete(null);
+        } catch (RuntimeException e) {
+            completion.completeExceptionally(e);
+        }
+    }
+
+    private void stop(Exception cause)
+    {
+        stopped = true;
+        subscription.cancel();
+        if (cause == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(cause);
+        }
+    }
+}
@@ -13,12 +13,21 @@
  */
 package com.opentable.callback;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -28,6 +37,9 @@ import org.slf4j.LoggerFactory;
 /**
  * A callback that puts submitted items into a batch. When the batch is committed it is processed via the supplied callback via the provided executor.
  * A commit happens when the number of items reaches the given batch size, or when commit is called, or when the callback is closed.
+ * <p>
+ * If a batch timeout is given, any batch still running when it expires is cancelled (interrupting its thread) and counted as a failure
+ * with a {@link TimeoutException} that carries the stuck thread's stack.
  *
  * @param <T> the type of item to process
  */
@@ -42,9 +54,22 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
      * @param out the callback to process batches of items
      * @param failFast whether the first error encountered should stop additional processing of items
      */
-    ExecutorBatchingCallback(int size, ExecutorService executor, Callback<? super List<T>> out, boolean failFast)
+    ExecutorBatchingCallback(int size, Executor executor, Callback<? super List<T>> out, boolean failFast)
     {
-        super(size, new ExecutorCallback<>(executor, out, failFast));
+        this(size, executor, out, failFast, null);
+    }
+
+    /**
+     * Create an executor batching callback whose batches must each complete within a deadline.
+     * @param size how many items should be collected into a batch before committing
+     * @param executor the executor with which to execute the callback
+     * @param out the callback to process batches of items
+     * @param failFast whether the first error encountered should stop additional processing of items
+     * @param batchTimeout how long a single batch may run before it is cancelled, or null for no limit
+     */
+    ExecutorBatchingCallback(int size, Executor executor, Callback<? super List<T>> out, boolean failFast, Duration batchTimeout)
+    {
+        super(size, new ExecutorCallback<>(executor, out, failFast, batchTimeout));
     }
 
     @Override
@@ -55,6 +80,13 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
         return result;
     }
 
+    @Override
+    public void close(Duration timeout)
+    {
+        super.commit();
+        ExecutorCallback.class.cast(getOut()).close(timeout);
+    }
+
     /**
      * A callback that wraps another callback and executes it with an executor service.
      * Can be set to fail fast on the first processing exception and not process additional items.
@@ -63,24 +95,43 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
      */
     static class ExecutorCallback<T> implements Callback<List<T>>
     {
-        private final ExecutorCompletionService<Void> executor;
+        private final Executor executor;
         private final Callback<? super List<T>> out;
         private final AtomicLong inFlight = new AtomicLong();
+        private final BlockingQueue<BatchTask<T>> completed = new LinkedBlockingQueue<>();
+        private final Set<BatchTask<T>> running = ConcurrentHashMap.newKeySet();
         private final BatchingCallbackExecutionException exceptions = new BatchingCallbackExecutionException();
         private final AtomicBoolean failed = new AtomicBoolean();
         private final boolean failFast;
+        private final Duration batchTimeout;
+
+        /**
+         * Create an executor callback
+         * @param executor the executor to run the callback on
+         * @param out the callback to run
+         * @param failFast whether the first error encountered should stop additional processing
+         */
+        ExecutorCallback(Executor executor, Callback<? super List<T>> out, boolean failFast)
+        {
+            this(executor, out, failFast, null);
+        }
 
         /**
          * Create an executor callback
          * @param executor the executor to run the callback on
          * @param out the callback to run
          * @param failFast whether the first error encountered should stop additional processing
+         * @param batchTimeout how long a single batch may run before it is cancelled, or null for no limit
          */
-        ExecutorCallback(ExecutorService executor, Callback<? super List<T>> out, boolean failFast)
+        ExecutorCallback(Executor executor, Callback<? super List<T>> out, boolean failFast, Duration batchTimeout)
         {
-            this.executor = new ExecutorCompletionService<>(executor);
+            if (batchTimeout != null && (batchTimeout.isNegative() || batchTimeout.isZero())) {
+                throw new IllegalArgumentException("Batch timeout must be positive, was " + batchTimeout);
+            }
+            this.executor = executor;
             this.out = out;
             this.failFast = failFast;
+            this.batchTimeout = batchTimeout;
         }
 
         @Override
@@ -90,17 +141,24 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
                 throw new CallbackRefusedException();
             }
 
+            final BatchTask<T> task = new BatchTask<>(new ExecutorCallable<>(out, item), this);
             inFlight.incrementAndGet();
-            executor.submit(new ExecutorCallable<T>(out, item));
+            running.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                running.remove(task);
+                inFlight.decrementAndGet();
+                throw e;
+            }
 
-            Future<Void> f;
-            while ( (f = executor.poll()) != null ) { //NOPMD
+            BatchTask<T> f;
+            while ( (f = completed.poll()) != null ) { //NOPMD
                 inFlight.decrementAndGet();
-                try {
-                    f.get();
-                } catch (ExecutionException e) {
-                    LOGGER.warn("Callback failed", e);
-                    exceptions.addSuppressed(e.getCause());
+                final Throwable failure = f.getFailure();
+                if (failure != null) {
+                    LOGGER.warn("Callback failed", failure);
+                    exceptions.addSuppressed(failure);
 
                     if (failFast) {
                         failed.set(true);
@@ -117,14 +175,41 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
          */
         public void close()
         {
-            while (inFlight.decrementAndGet() >= 0) {
+            close(null);
+        }
+
+        /**
+         * Let the in flight requests finish processing, waiting at most the given time.
+         * Requests still running at the deadline are cancelled and recorded as failures.
+         * Throws an exception when all in flight requests are done if any exceptions were encountered
+         * @param timeout how long to wait, or null to wait indefinitely
+         */
+        public void close(Duration timeout)
+        {
+            final long deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+            boolean unbounded = timeout == null;
+            while (inFlight.get() > 0) {
+                final BatchTask<T> f;
                 try {
-                    executor.take().get();
+                    if (unbounded) {
+                        f = completed.take();
+                    } else {
+                        f = completed.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (f == null) {
+                            // Cancelled tasks complete immediately, so the remaining takes will not block.
+                            unbounded = true;
+                            running.forEach(t -> expire(t, "Batch still running when close timed out after " + timeout));
+                            continue;
+                        }
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     throw new IllegalStateException(e);
-                } catch (ExecutionException e) {
-                    exceptions.addSuppressed(e.getCause());
+                }
+                inFlight.decrementAndGet();
+                final Throwable failure = f.getFailure();
+                if (failure != null) {
+                    exceptions.addSuppressed(failure);
                 }
             }
 
@@ -133,6 +218,151 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
                 throw exceptions;
             }
         }
+
+        /**
+         * Start the deadline of a task that is about to run.  The deadline counts from here rather than from
+         * submission, so time spent queued, for instance waiting for a turn on a {@link FairBatchScheduler},
+         * does not count against the batch.
+         * @param task the starting task
+         */
+        void started(BatchTask<T> task)
+        {
+            if (batchTimeout != null && !task.isDone()) {
+                task.watch(BatchTimer.INSTANCE.schedule(
+                        () -> expire(task, "Batch did not complete within " + batchTimeout),
+                        batchTimeout.toNanos(), TimeUnit.NANOSECONDS));
+            }
+        }
+
+        /**
+         * Record a finished task; called by the task itself, including when it is cancelled.
+         * @param task the finished task
+         */
+        void finished(BatchTask<T> task)
+        {
+            running.remove(task);
+            completed.add(task);
+        }
+
+        /**
+         * Cancel a batch that has overstayed its deadline, logging where it is stuck.
+         * @param task the batch
+         * @param message description of the deadline that passed
+         */
+        private void expire(BatchTask<T> task, String message)
+        {
+            if (task.isDone()) {
+                return;
+            }
+            final TimeoutException timeout = new TimeoutException(message);
+            final Thread runner = task.getRunner();
+            if (runner != null) {
+                timeout.setStackTrace(runner.getStackTrace());
+                LOGGER.error("Batch of {} items stuck on thread '{}', cancelling", task.getBatchSize(), runner.getName(), timeout);
+            } else {
+                LOGGER.error("Batch of {} items has not started, cancelling: {}", task.getBatchSize(), message);
+            }
+            task.expire(timeout);
+        }
+    }
+
+    /**
+     * A batch submitted to the executor.  Reports itself to its owner as soon as it is done, which
+     * includes being cancelled while the delegate is still stuck on an executor thread.
+     *
+     * @param <T> the type of item to process
+     */
+    static class BatchTask<T> extends FutureTask<Void>
+    {
+        private final ExecutorCallable<T> callable;
+        private final ExecutorCallback<T> owner;
+        private volatile ScheduledFuture<?> watchdog;
+        private volatile TimeoutException timeout;
+
+        /**
+         * Create a batch task
+         * @param callable the batch to run
+         * @param owner the callback to report completion to
+         */
+        BatchTask(ExecutorCallable<T> callable, ExecutorCallback<T> owner)
+        {
+            super(callable);
+            this.callable = callable;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run()
+        {
+            owner.started(this);
+            super.run();
+        }
+
+        @Override
+        protected void done()
+        {
+            final ScheduledFuture<?> w = watchdog;
+            if (w != null) {
+                w.cancel(false);
+            }
+            owner.finished(this);
+        }
+
+        /**
+         * Attach the scheduled deadline check, so it can be discarded once the batch finishes.
+         * @param deadline the scheduled check
+         */
+        void watch(ScheduledFuture<?> deadline)
+        {
+            watchdog = deadline;
+            if (isDone()) {
+                deadline.cancel(false);
+            }
+        }
+
+        /**
+         * Cancel the batch as timed out, interrupting the thread running it.
+         * @param cause the failure to report for this batch
+         */
+        void expire(TimeoutException cause)
+        {
+            timeout = cause;
+            cancel(true);
+        }
+
+        /**
+         * @return the failure of this finished batch, or null if it succeeded
+         */
+        Throwable getFailure()
+        {
+            try {
+                get();
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (CancellationException e) {
+                return timeout == null ? e : timeout;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * @return the thread currently running this batch, or null if it is not running
+         */
+        Thread getRunner()
+        {
+            return callable.getRunner();
+        }
+
+        /**
+         * @return the number of items in this batch
+         */
+        int getBatchSize()
+        {
+            return callable.getBatchSize();
+        }
     }
 
     /**
@@ -144,6 +374,7 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
     {
         private final Callback<? super List<T>> out;
         private final List<T> item;
+        private volatile Thread runner;
 
         /**
          * Create the executor callable
@@ -159,8 +390,29 @@ class ExecutorBatchingCallback<T> extends BatchingCallback<T>
         @Override
         public Void call() throws Exception
         {
-            out.call(item);
-            return null;
+            runner = Thread.currentThread();
+            try {
+                out.call(item);
+                return null;
+            } finally {
+                runner = null;
+            }
+        }
+
+        /**
+         * @return the thread currently running this batch, or null if it is not running
+         */
+        Thread getRunner()
+        {
+            return runner;
+        }
+
+        /**
+         * @return the number of items in this batch
+         */
+        int getBatchSize()
+        {
+            return item.size();
         }
     }
 }
@@ -0,0 +1,281 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares one {@link ExecutorService} fairly between many executor batching callbacks, for example one per tenant.
+ * Each registered batching callback queues its batches here rather than directly on the executor, and the
+ * scheduler starts at most {@code maxConcurrency} batches at a time, choosing among the callbacks with
+ * deficit round robin: on each turn a callback earns {@code quantum * weight} credit and may start batches
+ * until their item counts exhaust its credit.  A callback is also never given more than its own in-flight cap,
+ * so one noisy callback cannot occupy the whole executor and starve the rest.
+ * <pre>
+ * FairBatchScheduler scheduler = FairBatchScheduler.create(executor, 16, 100);
+ * BatchingCallback&lt;Row&gt; tenantA = scheduler.batchInto(100, writeRows, false, 1, 4);
+ * BatchingCallback&lt;Row&gt; tenantB = scheduler.batchInto(100, writeRows, false, 1, 4);
+ * </pre>
+ */
+@ThreadSafe
+public class FairBatchScheduler
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(FairBatchScheduler.class);
+
+    private final ExecutorService executor;
+    private final int maxConcurrency;
+    private final int quantum;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<TenantQueue> active = new ArrayDeque<>();
+    private int running;
+
+    /**
+     * Create a fair batch scheduler.
+     * @param executor the executor to run batches on
+     * @param maxConcurrency the maximum number of batches running on the executor at once
+     * @param quantum the number of items a callback of weight 1 may start per round
+     */
+    FairBatchScheduler(ExecutorService executor, int maxConcurrency, int quantum)
+    {
+        if (executor == null) {
+            throw new IllegalArgumentException("Null executor");
+        }
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Max concurrency must be positive, was " + maxConcurrency);
+        }
+        if (quantum <= 0) {
+            throw new IllegalArgumentException("Quantum must be positive, was " + quantum);
+        }
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.quantum = quantum;
+    }
+
+    /**
+     * Create a fair batch scheduler.  A quantum around the typical batch size gives each callback
+     * roughly one batch per weight unit per round.
+     * @param executor the executor to run batches on
+     * @param maxConcurrency the maximum number of batches running on the executor at once
+     * @param quantum the number of items a callback of weight 1 may start per round
+     * @return the scheduler
+     */
+    public static FairBatchScheduler create(ExecutorService executor, int maxConcurrency, int quantum)
+    {
+        return new FairBatchScheduler(executor, maxConcurrency, quantum);
+    }
+
+    /**
+     * Register a batching callback with this scheduler.  It behaves like
+     * {@link BatchingCallback#batchInto(int, ExecutorService, Callback, boolean)}, except that its
+     * batches wait for their fair turn on the shared executor.
+     *
+     * @param size the size of the buffer
+     * @param out the callback to pass batches of items to on commit
+     * @param failFast rethrow the first exception encountered and throw error for all future invocations if true,
+     *  if false we only throw one exception at the end that contains all the other exceptions
+     * @param weight this callback's share of the executor relative to the other callbacks
+     * @param maxInFlight the maximum number of this callback's batches running at once
+     * @return the batching callback
+     */
+    public <T> BatchingCallback<T> batchInto(int size, Callback<? super List<T>> out, boolean failFast, int weight, int maxInFlight)
+    {
+        return new ExecutorBatchingCallback<>(size, new TenantQueue(weight, maxInFlight), out, failFast);
+    }
+
+    /**
+     * Register a batching callback with this scheduler, whose batches must each complete within a deadline.
+     * See {@link BatchingCallback#batchInto(int, ExecutorService, Callback, boolean, Duration)}.
+     *
+     * @param size the size of the buffer
+     * @param out the callback to pass batches of items to on commit
+     * @param failFast rethrow the first exception encountered and throw error for all future invocations if true,
+     *  if false we only throw one exception at the end that contains all the other exceptions
+     * @param weight this callback's share of the executor relative to the other callbacks
+     * @param maxInFlight the maximum number of this callback's batches running at once
+     * @param batchTimeout how long a single batch may run before it is cancelled
+     * @return the batching callback
+     */
+    public <T> BatchingCallback<T> batchInto(int size, Callback<? super List<T>> out, boolean failFast, int weight, int maxInFlight, Duration batchTimeout)
+    {
+        if (batchTimeout == null) {
+            throw new IllegalArgumentException("Null batch timeout");
+        }
+        return new ExecutorBatchingCallback<>(size, new TenantQueue(weight, maxInFlight), out, failFast, batchTimeout);
+    }
+
+    /**
+     * @return the number of batches currently running on the executor
+     */
+    public int getRunning()
+    {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void submitted(TenantQueue queue, Runnable task)
+    {
+        final List<Runnable> launch;
+        lock.lock();
+        try {
+            queue.tasks.add(task);
+            activate(queue);
+            launch = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        launch.forEach(Runnable::run);
+    }
+
+    private void finished(TenantQueue queue)
+    {
+        final List<Runnable> launch;
+        lock.lock();
+        try {
+            running--;
+            queue.inFlight--;
+            activate(queue);
+            launch = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        launch.forEach(Runnable::run);
+    }
+
+    /**
+     * Put a queue on the round robin if it has work it is allowed to start.  Must hold the lock.
+     */
+    private void activate(TenantQueue queue)
+    {
+        if (!queue.active && !queue.tasks.isEmpty() && queue.inFlight < queue.maxInFlight) {
+            queue.active = true;
+            active.addLast(queue);
+        }
+    }
+
+    /**
+     * Deficit round robin over the active queues.  Must hold the lock;
+     * the returned launches must be run after releasing it.
+     */
+    private List<Runnable> dispatch()
+    {
+        List<Runnable> launch = null;
+        while (running < maxConcurrency && !active.isEmpty()) {
+            final TenantQueue queue = active.peekFirst();
+            if (!queue.visited) {
+                queue.visited = true;
+                queue.deficit += (long) quantum * queue.weight;
+            }
+            final Runnable task = queue.tasks.peekFirst();
+            final int cost = cost(task);
+            if (cost > queue.deficit) {
+                // Out of credit for this round; keep the remainder for the next one.
+                queue.visited = false;
+                active.addLast(active.pollFirst());
+                continue;
+            }
+            queue.tasks.pollFirst();
+            queue.deficit -= cost;
+            queue.inFlight++;
+            running++;
+            if (launch == null) {
+                launch = new ArrayList<>();
+            }
+            launch.add(() -> launch(queue, task));
+
+            if (queue.tasks.isEmpty() || queue.inFlight >= queue.maxInFlight) {
+                active.pollFirst();
+                queue.active = false;
+                queue.visited = false;
+                if (queue.tasks.isEmpty()) {
+                    queue.deficit = 0;
+                }
+            }
+        }
+        return launch == null ? List.of() : launch;
+    }
+
+    private static int cost(Runnable task)
+    {
+        return task instanceof ExecutorBatchingCallback.BatchTask ? Math.max(1, ((ExecutorBatchingCallback.BatchTask<?>) task).getBatchSize()) : 1;
+    }
+
+    private void launch(TenantQueue queue, Runnable task)
+    {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished(queue);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Executor rejected batch", e);
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+            finished(queue);
+        }
+    }
+
+    /**
+     * The queue of one registered batching callback, guarded by the scheduler's lock.
+     */
+    private final class TenantQueue implements Executor
+    {
+        private final int weight;
+        private final int maxInFlight;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private long deficit;
+        private int inFlight;
+        private boolean active;
+        private boolean visited;
+
+        TenantQueue(int weight, int maxInFlight)
+        {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight must be positive, was " + weight);
+            }
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("Max in flight must be positive, was " + maxInFlight);
+            }
+            this.weight = weight;
+            this.maxInFlight = maxInFlight;
+        }
+
+        @Override
+        public void execute(Runnable command)
+        {
+            submitted(this, command);
+        }
+    }
+}
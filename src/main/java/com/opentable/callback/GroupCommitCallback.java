@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Group commit: many threads submit items, which are written together in shared batches, and each
+ * submitter gets a future for its own item.  The future completes once the batch holding the item
+ * has been accepted by the delegate callback, or completes exceptionally with the exception the
+ * delegate threw for that batch, or that the executor threw rejecting it.
+ * <p>
+ * A batch is sent when it reaches {@code size} items, when its first item has waited {@code linger},
+ * or on {@link #commit()}.  Futures are completed on the executor thread that ran the batch; use the
+ * {@code *Async} variants of {@link CompletableFuture} for expensive continuations.
+ * <pre>
+ * GroupCommitCallback&lt;Row&gt; writer = GroupCommitCallback.batchInto(100, Duration.ofMillis(2), 4, executor, insertRows);
+ * ...
+ * writer.submit(row).join(); // returns once the row's batch is written
+ * </pre>
+ *
+ * @param <T> the type of item to process
+ */
+@ThreadSafe
+public class GroupCommitCallback<T> implements Callback<T>, Closeable
+{
+    private final PriorityBatchingCallback<Submission<T>> batcher;
+
+    /**
+     * Create a group commit callback.
+     * @param size the maximum number of items in a batch
+     * @param linger how long the first item of a batch may wait for more items
+     * @param maxInFlight the maximum number of batches running on the executor at once
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to
+     */
+    GroupCommitCallback(int size, Duration linger, int maxInFlight, ExecutorService executor, Callback<? super List<T>> out)
+    {
+        if (linger == null || linger.isZero() || linger.isNegative()) {
+            throw new IllegalArgumentException("Linger must be positive, was " + linger);
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Null callback");
+        }
+        batcher = new PriorityBatchingCallback<>(Collections.singletonList(PriorityBatchingCallback.Lane.of(size, linger)),
+                s -> 0, maxInFlight, 0, executor, batch -> write(out, batch), GroupCommitCallback::fail);
+    }
+
+    /**
+     * Collect {@code <T>} into shared batches, passing each batch to the given callback on the given executor.
+     * @param size the maximum number of items in a batch
+     * @param linger how long the first item of a batch may wait for more items
+     * @param maxInFlight the maximum number of batches running on the executor at once
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to
+     * @return the group commit callback
+     */
+    public static <T> GroupCommitCallback<T> batchInto(int size, Duration linger, int maxInFlight, ExecutorService executor, Callback<? super List<T>> out)
+    {
+        return new GroupCommitCallback<>(size, linger, maxInFlight, executor, out);
+    }
+
+    /**
+     * Add an item to the current batch.
+     * @param item the item to add
+     * @return a future completed when the item's batch has been written, or failed with the batch's exception.
+     *  If the delegate has already refused a batch, the future fails with {@link CallbackRefusedException}.
+     */
+    public CompletableFuture<Void> submit(T item)
+    {
+        final Submission<T> submission = new Submission<>(item);
+        try {
+            batcher.call(submission);
+        } catch (CallbackRefusedException e) {
+            submission.future.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            submission.future.completeExceptionally(e);
+        }
+        return submission.future;
+    }
+
+    /**
+     * Add an item without waiting for it to be written.
+     * @param item the item to add
+     * @throws CallbackRefusedException if the delegate has refused a batch
+     * @throws InterruptedException if interrupted while waiting for room in the batch queue
+     */
+    @Override
+    public void call(T item) throws CallbackRefusedException, InterruptedException
+    {
+        batcher.call(new Submission<>(item));
+    }
+
+    /**
+     * Alternate method of committing, for use with {@code try-with-resources}.
+     */
+    @Override
+    public void close()
+    {
+        commit();
+    }
+
+    /**
+     * Send the current batch, even if it is not full, and wait for all batches to finish.
+     * @return true if the flush succeeds, false if the delegate has thrown {@code CallbackRefusedException}
+     * @throws BatchingCallbackExecutionException if any batch has failed
+     */
+    public boolean commit()
+    {
+        return batcher.commit();
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private static <T> void write(Callback<? super List<T>> out, List<Submission<T>> batch) throws Exception
+    {
+        final List<T> items = new ArrayList<>(batch.size());
+        for (Submission<T> submission : batch) {
+            items.add(submission.item);
+        }
+        try {
+            out.call(items);
+        } catch (Throwable t) {
+            // An Error must fail the futures too, or the callers waiting on them never return
+            batch.forEach(submission -> submission.future.completeExceptionally(t));
+            throw t;
+        }
+        batch.forEach(submission -> submission.future.complete(null));
+    }
+
+    private static <T> void fail(List<Submission<T>> batch, Exception e)
+    {
+        batch.forEach(submission -> submission.future.completeExceptionally(e));
+    }
+
+    /**
+     * An item and the future of its batch.
+     */
+    private static final class Submission<T>
+    {
+        private final T item;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Submission(T item)
+        {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batching callback with several lanes, each collecting its own batches, ordered by priority:
+ * lane 0 is the most urgent.  Each lane has its own batch size and linger time, after which a partial
+ * batch is flushed even if it is not full.  Batches are run on the executor with at most
+ * {@code maxInFlight} at a time; whenever a slot frees up it goes to the most urgent lane with a batch ready,
+ * and {@code reserved} of the slots are never given to any lane but lane 0, so urgent batches do not
+ * queue behind slow bulk batches.
+ * <p>
+ * Producers of a lane block once {@code maxInFlight} sealed batches of that lane are waiting for a slot,
+ * so a flood of bulk items cannot buffer without bound or hold up urgent producers.
+ * Exceptions thrown by the delegate are collected and thrown as a {@link BatchingCallbackExecutionException}
+ * on {@link #commit()}.  If the delegate throws {@link CallbackRefusedException}, further calls are refused.
+ * <pre>
+ * try (PriorityBatchingCallback&lt;Update&gt; callback = PriorityBatchingCallback.batchInto(
+ *         List.of(Lane.of(10, Duration.ofMillis(5)), Lane.of(500, Duration.ofSeconds(1))),
+ *         update -&gt; update.isCancellation() ? 0 : 1, 8, 2, executor, writeUpdates)) {
+ *     doQuery(Queries.allUpdates(), callback);
+ * }
+ * </pre>
+ *
+ * @param <T> the type of item to process
+ */
+@ThreadSafe
+public class PriorityBatchingCallback<T> implements Callback<T>, Closeable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PriorityBatchingCallback.class);
+
+    private final List<LaneState<T>> lanes;
+    private final ToIntFunction<? super T> laneSelector;
+    private final int maxInFlight;
+    private final int reserved;
+    private final ExecutorService executor;
+    private final Callback<? super List<T>> out;
+    private final BiConsumer<? super List<T>, ? super Exception> failed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
+    private final BatchingCallbackExecutionException exceptions = new BatchingCallbackExecutionException();
+    private int inFlight;
+    private int ready;
+    private volatile boolean refused;
+
+    /**
+     * Create a priority batching callback.
+     * @param lanes the lane settings, most urgent first
+     * @param laneSelector chooses the lane for each item passed to {@link #call(Object)}
+     * @param maxInFlight the maximum number of batches running on the executor at once
+     * @param reserved how many of those slots only lane 0 may use
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to
+     */
+    PriorityBatchingCallback(List<Lane> lanes, ToIntFunction<? super T> laneSelector, int maxInFlight, int reserved,
+            ExecutorService executor, Callback<? super List<T>> out)
+    {
+        this(lanes, laneSelector, maxInFlight, reserved, executor, out, (batch, e) -> { });
+    }
+
+    /**
+     * Create a priority batching callback.
+     * @param lanes the lane settings, most urgent first
+     * @param laneSelector chooses the lane for each item passed to {@link #call(Object)}
+     * @param maxInFlight the maximum number of batches running on the executor at once
+     * @param reserved how many of those slots only lane 0 may use
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to
+     * @param failed receives batches that were never passed to {@code out}, with the reason
+     */
+    PriorityBatchingCallback(List<Lane> lanes, ToIntFunction<? super T> laneSelector, int maxInFlight, int reserved,
+            ExecutorService executor, Callback<? super List<T>> out, BiConsumer<? super List<T>, ? super Exception> failed)
+    {
+        if (lanes == null || lanes.isEmpty()) {
+            throw new IllegalArgumentException("At least one lane is required");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in flight must be positive, was " + maxInFlight);
+        }
+        if (reserved < 0 || reserved >= maxInFlight) {
+            throw new IllegalArgumentException("Reserved slots must be between 0 and " + (maxInFlight - 1) + ", was " + reserved);
+        }
+        if (laneSelector == null || executor == null || out == null || failed == null) {
+            throw new IllegalArgumentException("Null lane selector, executor or callback");
+        }
+        this.lanes = new ArrayList<>(lanes.size());
+        for (int i = 0; i < lanes.size(); i++) {
+            this.lanes.add(new LaneState<>(i, lanes.get(i)));
+        }
+        this.laneSelector = laneSelector;
+        this.maxInFlight = maxInFlight;
+        this.reserved = reserved;
+        this.executor = executor;
+        this.out = out;
+        this.failed = failed;
+    }
+
+    /**
+     * Collect {@code <T>} into per-lane buffers, and schedule the given callback with the given executor
+     * whenever a lane's buffer is full or has lingered long enough.
+     *
+     * @param lanes the lane settings, most urgent first
+     * @param laneSelector chooses the lane for each item passed to {@link #call(Object)}
+     * @param maxInFlight the maximum number of batches running on the executor at once
+     * @param reserved how many of those slots only lane 0 may use
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to
+     * @return the priority batching callback
+     */
+    public static <T> PriorityBatchingCallback<T> batchInto(List<Lane> lanes, ToIntFunction<? super T> laneSelector,
+            int maxInFlight, int reserved, ExecutorService executor, Callback<? super List<T>> out)
+    {
+        return new PriorityBatchingCallback<>(lanes, laneSelector, maxInFlight, reserved, executor, out);
+    }
+
+    /**
+     * Like {@link #batchInto(List, ToIntFunction, int, int, ExecutorService, Callback)}, also telling the caller
+     * about batches that never reach the callback: those dropped after it refused a batch, which come with a
+     * {@link CallbackRefusedException}, and those the executor rejected, which come with its
+     * {@link RejectedExecutionException}.  Callers that hand out a completion for every item use this to
+     * complete the items of such batches.
+     *
+     * @param lanes the lane settings, most urgent first
+     * @param laneSelector chooses the lane for each item passed to {@link #call(Object)}
+     * @param maxInFlight the maximum number of batches running on the executor at once
+     * @param reserved how many of those slots only lane 0 may use
+     * @param executor the executor to run the callback on
+     * @param out the callback to pass batches of items to
+     * @param failed receives batches that were never passed to {@code out}, with the reason
+     * @return the priority batching callback
+     */
+    public static <T> PriorityBatchingCallback<T> batchInto(List<Lane> lanes, ToIntFunction<? super T> laneSelector,
+            int maxInFlight, int reserved, ExecutorService executor, Callback<? super List<T>> out,
+            BiConsumer<? super List<T>, ? super Exception> failed)
+    {
+        return new PriorityBatchingCallback<>(lanes, laneSelector, maxInFlight, reserved, executor, out, failed);
+    }
+
+    /**
+     * Add an item to the lane chosen by the lane selector.
+     * @param item the item to add
+     * @throws CallbackRefusedException if the delegate has refused a batch
+     * @throws InterruptedException if interrupted while waiting for the lane to drain
+     */
+    @Override
+    public void call(T item) throws CallbackRefusedException, InterruptedException
+    {
+        call(item, laneSelector.applyAsInt(item));
+    }
+
+    /**
+     * Add an item to the given lane.  May seal a batch if the lane's buffer is full,
+     * and blocks while too many of the lane's batches are waiting for the executor.
+     * @param item the item to add
+     * @param lane the lane to add it to, 0 being the most urgent
+     * @throws CallbackRefusedException if the delegate has refused a batch
+     * @throws InterruptedException if interrupted while waiting for the lane to drain
+     */
+    public void call(T item, int lane) throws CallbackRefusedException, InterruptedException
+    {
+        if (lane < 0 || lane >= lanes.size()) {
+            throw new IllegalArgumentException("No lane " + lane + ", have " + lanes.size());
+        }
+        final LaneState<T> state = lanes.get(lane);
+        final List<Runnable> launch;
+        lock.lockInterruptibly();
+        try {
+            while (state.sealed.size() >= maxInFlight && !refused) {
+                progress.await();
+            }
+            if (refused) {
+                throw new CallbackRefusedException();
+            }
+            state.buffer.add(item);
+            if (state.buffer.size() >= state.size) {
+                seal(state);
+            } else if (state.buffer.size() == 1 && state.lingerNanos > 0) {
+                final long generation = state.generation;
+                state.linger = BatchTimer.INSTANCE.schedule(() -> lingered(state, generation), state.lingerNanos, TimeUnit.NANOSECONDS);
+            }
+            launch = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        launch.forEach(Runnable::run);
+    }
+
+    /**
+     * Alternate method of committing, for use with {@code try-with-resources}.
+     */
+    @Override
+    public void close()
+    {
+        commit();
+    }
+
+    /**
+     * Flush every lane, most urgent first, and wait for all batches to finish.
+     * @return true if the flush succeeds, false if the delegate has thrown {@code CallbackRefusedException}
+     * @throws BatchingCallbackExecutionException if any batch has failed
+     */
+    public boolean commit()
+    {
+        final List<Runnable> launch;
+        lock.lock();
+        try {
+            for (LaneState<T> state : lanes) {
+                if (!state.buffer.isEmpty()) {
+                    seal(state);
+                }
+            }
+            launch = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        launch.forEach(Runnable::run);
+
+        lock.lock();
+        try {
+            while (ready > 0 || inFlight > 0) {
+                progress.awaitUninterruptibly();
+            }
+            if (exceptions.getSuppressed().length != 0) {
+                exceptions.fillInStackTrace();
+                throw exceptions;
+            }
+            return !refused;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move the lane's buffer to its queue of sealed batches.  Must hold the lock.
+     */
+    private void seal(LaneState<T> state)
+    {
+        if (state.linger != null) {
+            state.linger.cancel(false);
+            state.linger = null;
+        }
+        state.sealed.add(state.buffer);
+        state.buffer = new ArrayList<>(state.size);
+        state.generation++;
+        ready++;
+    }
+
+    /**
+     * Flush a lane whose first item has waited for the lane's linger time.
+     */
+    private void lingered(LaneState<T> state, long generation)
+    {
+        final List<Runnable> launch;
+        lock.lock();
+        try {
+            if (state.generation != generation || state.buffer.isEmpty()) {
+                return;
+            }
+            state.linger = null;
+            seal(state);
+            launch = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        launch.forEach(Runnable::run);
+    }
+
+    /**
+     * Assign free executor slots to sealed batches, most urgent lane first.  Must hold the lock;
+     * the returned launches must be run after releasing it.
+     */
+    private List<Runnable> dispatch()
+    {
+        List<Runnable> launch = null;
+        if (refused && ready > 0) {
+            launch = new ArrayList<>();
+            for (LaneState<T> state : lanes) {
+                for (List<T> batch : state.sealed) {
+                    launch.add(() -> failed.accept(batch, new CallbackRefusedException()));
+                }
+                state.sealed.clear();
+            }
+            ready = 0;
+            progress.signalAll();
+        }
+        while (inFlight < maxInFlight && ready > 0) {
+            final LaneState<T> state = nextReady();
+            if (state == null) {
+                break;
+            }
+            final List<T> batch = state.sealed.poll();
+            ready--;
+            inFlight++;
+            if (launch == null) {
+                launch = new ArrayList<>();
+            }
+            launch.add(() -> launch(batch));
+            progress.signalAll();
+        }
+        return launch == null ? List.of() : launch;
+    }
+
+    private LaneState<T> nextReady()
+    {
+        final boolean bulkAllowed = inFlight < maxInFlight - reserved;
+        for (LaneState<T> state : lanes) {
+            if (state.index > 0 && !bulkAllowed) {
+                return null;
+            }
+            if (!state.sealed.isEmpty()) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private void launch(List<T> batch)
+    {
+        try {
+            executor.execute(() -> run(batch));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Batch rejected by executor", e);
+            failed.accept(batch, e);
+            finished(e);
+        }
+    }
+
+    private void run(List<T> batch)
+    {
+        Throwable failure = null;
+        try {
+            out.call(batch);
+        } catch (CallbackRefusedException e) {
+            LOGGER.trace("callback refused", e);
+            refused = true;
+        } catch (Exception e) {
+            LOGGER.warn("Callback failed", e);
+            failure = e;
+        } catch (Error e) {
+            LOGGER.error("Callback failed", e);
+            failure = e;
+            throw e;
+        } finally {
+            // Release the slot even for an Error, or commit() and every later batch would wait for it forever
+            finished(failure);
+        }
+    }
+
+    private void finished(Throwable failure)
+    {
+        final List<Runnable> launch;
+        lock.lock();
+        try {
+            inFlight--;
+            if (failure != null) {
+                exceptions.addSuppressed(failure);
+            }
+            launch = dispatch();
+            progress.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        launch.forEach(Runnable::run);
+    }
+
+    /**
+     * Settings for one lane of a {@link PriorityBatchingCallback}.
+     */
+    public static final class Lane
+    {
+        private final int size;
+        private final Duration linger;
+
+        private Lane(int size, Duration linger)
+        {
+            if (size <= 0) {
+                throw new IllegalArgumentException("Size must be positive, was " + size);
+            }
+            if (linger == null || linger.isNegative()) {
+                throw new IllegalArgumentException("Linger must not be negative, was " + linger);
+            }
+            this.size = size;
+            this.linger = linger;
+        }
+
+        /**
+         * Describe a lane.
+         * @param size the number of items in a full batch
+         * @param linger how long the first item of a batch may wait before a partial batch is flushed;
+         *  {@link Duration#ZERO} only flushes full batches and on commit
+         * @return the lane settings
+         */
+        public static Lane of(int size, Duration linger)
+        {
+            return new Lane(size, linger);
+        }
+
+        /**
+         * @return the number of items in a full batch
+         */
+        public int getSize()
+        {
+            return size;
+        }
+
+        /**
+         * @return how long the first item of a batch may wait before the batch is flushed
+         */
+        public Duration getLinger()
+        {
+            return linger;
+        }
+    }
+
+    /**
+     * The buffers of one lane, guarded by the callback's lock.
+     */
+    private static final class LaneState<T>
+    {
+        private final int index;
+        private final int size;
+        private final long lingerNanos;
+        private final ArrayDeque<List<T>> sealed = new ArrayDeque<>();
+        private List<T> buffer;
+        private long generation;
+        private ScheduledFuture<?> linger;
+
+        LaneState(int index, Lane lane)
+        {
+            this.index = index;
+            this.size = lane.getSize();
+            this.lingerNanos = lane.getLinger().toNanos();
+            this.buffer = new ArrayList<>(size);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Runs blocking {@link IOFunction}s on an I/O executor and returns {@link CompletableFuture}s, so a request
+ * thread can fan out many blocking calls and wait for them together.
+ *
+ * <p> At most {@code maxConcurrency} calls run at once; more wait for a slot.  The executor created by
+ * {@link #create} uses virtual threads when the JVM has them, and otherwise that many daemon threads.
+ *
+ * <p> Cancelling a returned future, or its timeout expiring, interrupts the thread running the call, so blocking
+ * I/O that responds to interruption is abandoned rather than left to finish unobserved.  A timeout counts from
+ * the call, including any wait for a slot.
+ */
+@ThreadSafe
+public final class AsyncIO implements Closeable {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+
+    private AsyncIO(ExecutorService executor, boolean ownsExecutor, int maxConcurrency) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * @param maxConcurrency the most calls to run at once
+     * @return an adapter with its own executor, which {@link #close()} shuts down
+     */
+    public static AsyncIO create(int maxConcurrency) {
+        checkPositive(maxConcurrency);
+        return new AsyncIO(newExecutor(maxConcurrency), true, maxConcurrency);
+    }
+
+    /**
+     * @param executor runs the calls; it is not shut down by {@link #close()}
+     * @param maxConcurrency the most calls to run at once
+     * @return an adapter running calls on the given executor
+     */
+    public static AsyncIO using(ExecutorService executor, int maxConcurrency) {
+        checkPositive(maxConcurrency);
+        return new AsyncIO(executor, false, maxConcurrency);
+    }
+
+    /**
+     * @param function the blocking function to call
+     * @param input the input to call it with
+     * @param <A> the type of the input
+     * @param <B> the type of the result
+     * @return the result of the call
+     */
+    public <A, B> CompletableFuture<B> apply(IOFunction<? super A, ? extends B> function, A input) {
+        return apply(function, input, null);
+    }
+
+    /**
+     * @param function the blocking function to call
+     * @param input the input to call it with
+     * @param timeout how long to wait for the call before failing it with a {@link java.util.concurrent.TimeoutException}
+     *                and interrupting it, or null to wait forever
+     * @param <A> the type of the input
+     * @param <B> the type of the result
+     * @return the result of the call
+     */
+    public <A, B> CompletableFuture<B> apply(IOFunction<? super A, ? extends B> function, A input, Duration timeout) {
+        final Call<B> call = new Call<>();
+        try {
+            executor.execute(() -> call.run(function, input, permits));
+        } catch (RejectedExecutionException e) {
+            call.result.completeExceptionally(e);
+            return call.result;
+        }
+        if (timeout != null) {
+            call.result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return call.result;
+    }
+
+    /**
+     * Call a function for every input, with at most {@code concurrency} of these calls running at once.
+     * If a call fails, the others are cancelled and the result fails with its exception.  Cancelling the result
+     * cancels the calls.
+     * @param function the blocking function to call
+     * @param inputs the inputs to call it with
+     * @param concurrency the most of these calls to run at once
+     * @param timeout the timeout of each call, or null to wait forever
+     * @param <A> the type of the inputs
+     * @param <B> the type of the results
+     * @return the results, in the order of the inputs
+     */
+    public <A, B> CompletableFuture<List<B>> applyAll(IOFunction<? super A, ? extends B> function, Collection<? extends A> inputs,
+            int concurrency, Duration timeout) {
+        checkPositive(concurrency);
+        final FanOut<A, B> fanOut = new FanOut<>(function, new ArrayList<>(inputs), timeout);
+        if (fanOut.inputs.isEmpty()) {
+            fanOut.all.complete(Collections.emptyList());
+        }
+        for (int i = 0; i < concurrency && i < fanOut.inputs.size(); i++) {
+            fanOut.startNext();
+        }
+        return fanOut.all;
+    }
+
+    /**
+     * Shut down the executor if this adapter created it.  Running calls are left to finish.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private static void checkPositive(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive, was " + concurrency);
+        }
+    }
+
+    private static ExecutorService newExecutor(int maxConcurrency) {
+        try {
+            // Compiled for Java 11, so virtual threads can only be found at run time
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        final Thread t = new Thread(r, "async-io-" + THREAD_NUMBER.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    /**
+     * One call, and the thread running it while it runs, so that completing it early can interrupt that thread.
+     */
+    private static final class Call<B> {
+        final CompletableFuture<B> result = new CompletableFuture<>();
+        // Only read or written while holding this call's lock
+        private Thread runner;
+
+        Call() {
+            // Does nothing if the call itself completed the result, since it has cleared the runner by then
+            result.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    interruptRunner();
+                }
+            });
+        }
+
+        @SuppressWarnings("PMD.AvoidCatchingThrowable")
+        <A> void run(IOFunction<? super A, ? extends B> function, A input, Semaphore permits) {
+            synchronized (this) {
+                if (result.isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            B value = null;
+            Throwable failure = null;
+            try {
+                permits.acquire();
+                try {
+                    value = function.apply(input);
+                } finally {
+                    permits.release();
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+            synchronized (this) {
+                runner = null;
+            }
+            if (result.isDone()) {
+                // Clear an interrupt meant to cancel this call, since the thread goes on to run other tasks
+                Thread.interrupted();
+            } else if (failure == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(failure);
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+
+        synchronized void interruptRunner() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * The state of one {@link #applyAll} call.
+     */
+    private final class FanOut<A, B> {
+        final IOFunction<? super A, ? extends B> function;
+        final List<? extends A> inputs;
+        final Duration timeout;
+        final CompletableFuture<List<B>> all = new CompletableFuture<>();
+        final AtomicReferenceArray<CompletableFuture<B>> calls;
+        final Object[] results;
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining;
+
+        FanOut(IOFunction<? super A, ? extends B> function, List<? extends A> inputs, Duration timeout) {
+            this.function = function;
+            this.inputs = inputs;
+            this.timeout = timeout;
+            this.calls = new AtomicReferenceArray<>(inputs.size());
+            this.results = new Object[inputs.size()];
+            this.remaining = new AtomicInteger(inputs.size());
+            all.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    for (int i = 0; i < calls.length(); i++) {
+                        final CompletableFuture<B> call = calls.get(i);
+                        if (call != null) {
+                            call.cancel(true);
+                        }
+                    }
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        void startNext() {
+            final int i = next.getAndIncrement();
+            if (i >= inputs.size() || all.isDone()) {
+                return;
+            }
+            final CompletableFuture<B> call = apply(function, inputs.get(i), timeout);
+            calls.set(i, call);
+            // The result may have failed while this call was starting, after the others were cancelled
+            if (all.isDone()) {
+                call.cancel(true);
+                return;
+            }
+            call.whenComplete((value, failure) -> {
+                if (failure != null) {
+                    all.completeExceptionally(failure);
+                    return;
+                }
+                results[i] = value;
+                if (remaining.decrementAndGet() == 0) {
+                    all.complete((List<B>) Arrays.asList(results));
+                } else {
+                    startNext();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.opentable.callback.BatchingCallbackExecutionException;
+import com.opentable.callback.CallbackRefusedException;
+import com.opentable.callback.GroupCommitCallback;
+import com.opentable.callback.PriorityBatchingCallback;
+
+/**
+ * Turns per-key lookups into bulk lookups: keys requested by many threads, or many times in a loop, are collected
+ * into batches and loaded with one call of a bulk loader, in the manner of DataLoader.
+ * <p>
+ * Batching works as in {@link GroupCommitCallback}: a batch is sent when it reaches {@code size} keys, when its
+ * first key has waited {@code linger}, or on {@link #flush()}, with at most {@code maxInFlight} bulk calls running
+ * on the executor at once.  Keys requested more than once in a batch are loaded once.  A key missing from the
+ * bulk loader's result loads as null.  If the bulk loader throws, or the executor rejects the batch, every key
+ * of that batch fails with the exception, {@link #flush()} reports it, and later batches are still tried.  Futures are completed on the executor thread that ran the
+ * batch; use the {@code *Async} variants of {@link CompletableFuture} for expensive continuations.
+ * <pre>
+ * BatchLoader&lt;UUID, User&gt; users = BatchLoader.of(100, Duration.ofMillis(2), 4, executor, userDao::findByIds);
+ * ...
+ * User user = users.apply(id); // shares a bulk call with concurrent lookups
+ * </pre>
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@ThreadSafe
+public class BatchLoader<K, V> implements ThrowingFunction<K, V>, Closeable {
+    private final PriorityBatchingCallback<Request<K, V>> batcher;
+
+    BatchLoader(int size, Duration linger, int maxInFlight, ExecutorService executor, ThrowingFunction<Collection<K>, Map<K, V>> bulk) {
+        if (linger == null || linger.isZero() || linger.isNegative()) {
+            throw new IllegalArgumentException("Linger must be positive, was " + linger);
+        }
+        Objects.requireNonNull(bulk, "bulk");
+        batcher = PriorityBatchingCallback.batchInto(Collections.singletonList(PriorityBatchingCallback.Lane.of(size, linger)),
+                r -> 0, maxInFlight, 0, executor, batch -> load(bulk, batch), BatchLoader::fail);
+    }
+
+    /**
+     * Create a batch loader.
+     * @param size the maximum number of keys in a batch
+     * @param linger how long the first key of a batch may wait for more keys
+     * @param maxInFlight the maximum number of bulk calls running on the executor at once
+     * @param executor the executor to run the bulk loader on
+     * @param bulk loads the values for a collection of distinct keys; keys it has no value for may be left out
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return the batch loader
+     */
+    public static <K, V> BatchLoader<K, V> of(int size, Duration linger, int maxInFlight, ExecutorService executor,
+            ThrowingFunction<Collection<K>, Map<K, V>> bulk) {
+        return new BatchLoader<>(size, linger, maxInFlight, executor, bulk);
+    }
+
+    /**
+     * Add a key to the current batch.
+     * @param key the key to load
+     * @return a future completed with the key's value, or null if the bulk loader had none for it
+     */
+    public CompletableFuture<V> load(K key) {
+        final Request<K, V> request = new Request<>(key);
+        try {
+            batcher.call(request);
+        } catch (CallbackRefusedException e) {
+            request.future.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.completeExceptionally(e);
+        }
+        return request.future;
+    }
+
+    /**
+     * Add several keys to the current batch without waiting between them, so a loop of lookups becomes one bulk call.
+     * @param keys the keys to load
+     * @return a future completed with the values of the keys the bulk loader had values for
+     */
+    public CompletableFuture<Map<K, V>> loadAll(Collection<? extends K> keys) {
+        final Map<K, CompletableFuture<V>> futures = new HashMap<>();
+        for (K key : keys) {
+            futures.computeIfAbsent(key, this::load);
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            final Map<K, V> values = new HashMap<>();
+            futures.forEach((key, future) -> {
+                final V value = future.join();
+                if (value != null) {
+                    values.put(key, value);
+                }
+            });
+            return values;
+        });
+    }
+
+    /**
+     * Load one key, waiting for its batch.
+     * @param key the key to load
+     * @return the key's value, or null if the bulk loader had none for it
+     * @throws Exception the exception the bulk loader threw for the key's batch
+     */
+    @Override
+    public V apply(K key) throws Exception {
+        try {
+            return load(key).get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    /**
+     * Send the current batch, even if it is not full, and wait for all batches to finish.
+     * A failed batch fails the futures of its keys, and is also reported here.
+     * @throws BatchingCallbackExecutionException if any batch has failed or been rejected, with their exceptions
+     *                                            suppressed; a bulk loader's {@link Error} is wrapped in an
+     *                                            {@link ExecutionException}
+     */
+    public void flush() {
+        batcher.commit();
+    }
+
+    /**
+     * Alternate method of flushing, for use with {@code try-with-resources}.
+     * @throws BatchingCallbackExecutionException if any batch has failed or been rejected
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private static <K, V> void load(ThrowingFunction<Collection<K>, Map<K, V>> bulk, List<Request<K, V>> batch) throws Exception {
+        final Set<K> keys = new LinkedHashSet<>();
+        for (Request<K, V> request : batch) {
+            keys.add(request.key);
+        }
+        final Map<K, V> values;
+        try {
+            values = Objects.requireNonNull(bulk.apply(Collections.unmodifiableSet(keys)), "bulk loader returned null");
+        } catch (Throwable t) {
+            batch.forEach(request -> request.future.completeExceptionally(t));
+            // Collected by the batcher for flush(); an Error is wrapped so it does not also escape to the executor
+            if (t instanceof Error) {
+                throw new ExecutionException(t);
+            }
+            throw (Exception) t;
+        }
+        batch.forEach(request -> request.future.complete(values.get(request.key)));
+    }
+
+    private static <K, V> void fail(List<Request<K, V>> batch, Exception e) {
+        batch.forEach(request -> request.future.completeExceptionally(e));
+    }
+
+    /**
+     * A key and the future of its value.
+     */
+    private static final class Request<K, V> {
+        private final K key;
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        Request(K key) {
+            this.key = key;
+        }
+    }
+}
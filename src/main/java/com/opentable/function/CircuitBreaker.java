@@ -0,0 +1,375 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Stops calling a failing dependency for a while, so callers fail fast instead of waiting on timeouts.
+ *
+ * <p> While {@link State#CLOSED closed}, calls go through and their outcomes are kept in a sliding window of the
+ * last {@code windowSize} calls.  Once the window holds at least the minimum number of calls and the share that
+ * failed, or optionally the share that were slower than a threshold, reaches its limit, the breaker
+ * {@link State#OPEN opens}: calls are refused with a {@link CircuitOpenException} for the open duration.  After that
+ * it is {@link State#HALF_OPEN half open} and lets a few trial calls through; if they all succeed quickly it
+ * closes with an empty window, and if any does not it opens again.  If the trials have not all returned within
+ * the open duration, for instance because one of them hangs, a fresh set of trial calls is let through.
+ *
+ * <p> Only calls admitted in the current state count: a call admitted while closed that finishes after the breaker
+ * opened, such as a slow timeout during an outage, neither extends the open duration nor counts as a trial, and a
+ * trial from an earlier set does not count towards the current one.  A closed call racing with the transition may
+ * still land one stale outcome in the window.
+ *
+ * <p> Nothing takes a lock.  A closed call costs two volatile reads, an increment of the window cursor and a swap of
+ * one window slot, plus two clock reads if slow calls are tracked; the failure counts only change when a slot's
+ * outcome does.  An open breaker refuses a call with a volatile read and a clock read.
+ *
+ * <p> One breaker may decorate several functions, which then share its state.  The configuration methods return a
+ * new breaker with fresh state.
+ */
+@ThreadSafe
+public final class CircuitBreaker {
+    private static final int PRESENT = 1;
+    private static final int FAILED = 2;
+    private static final int SLOW = 4;
+
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final int minimumCalls;
+    private final int halfOpenCalls;
+    private final Predicate<? super Exception> isFailure;
+    private final LongSupplier nanoClock;
+
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(State.CLOSED, 0, 0));
+
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicIntegerArray window;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    private CircuitBreaker(int windowSize, double failureRateThreshold, Duration openDuration, Duration slowCallDuration,
+            double slowCallRateThreshold, int minimumCalls, int halfOpenCalls, Predicate<? super Exception> isFailure, LongSupplier nanoClock) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive, was " + windowSize);
+        }
+        checkRate("Failure rate threshold", failureRateThreshold);
+        checkRate("Slow call rate threshold", slowCallRateThreshold);
+        if (openDuration.isNegative() || openDuration.isZero() || slowCallDuration.isNegative()) {
+            throw new IllegalArgumentException("Open duration must be positive and slow call duration not negative, were "
+                    + openDuration + " and " + slowCallDuration);
+        }
+        if (minimumCalls <= 0 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Minimum calls must be between 1 and the window size, was " + minimumCalls);
+        }
+        if (halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("Half open calls must be positive, was " + halfOpenCalls);
+        }
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.halfOpenCalls = halfOpenCalls;
+        this.isFailure = Objects.requireNonNull(isFailure, "isFailure");
+        this.nanoClock = nanoClock;
+        this.window = new AtomicIntegerArray(windowSize);
+    }
+
+    /**
+     * Create a breaker that opens on failures only.  Every exception counts as a failure, the minimum number of
+     * calls is the window size, and up to ten trial calls are made when half open.
+     * @param windowSize how many of the most recent calls to judge the failure rate over
+     * @param failureRateThreshold the share of failed calls, between 0 and 1, at which to open
+     * @param openDuration how long to refuse calls once open
+     * @return the breaker
+     */
+    public static CircuitBreaker of(int windowSize, double failureRateThreshold, Duration openDuration) {
+        return new CircuitBreaker(windowSize, failureRateThreshold, openDuration, Duration.ZERO, 1,
+                windowSize, Math.min(10, windowSize), e -> true, System::nanoTime);
+    }
+
+    /**
+     * @param slowCallDuration calls that take at least this long count as slow
+     * @param slowCallRateThreshold the share of slow calls, between 0 and 1, at which to open
+     * @return a new breaker that also opens when too many calls are slow
+     */
+    public CircuitBreaker withSlowCalls(Duration slowCallDuration, double slowCallRateThreshold) {
+        if (slowCallDuration.isNegative() || slowCallDuration.isZero()) {
+            throw new IllegalArgumentException("Slow call duration must be positive, was " + slowCallDuration);
+        }
+        return new CircuitBreaker(windowSize, failureRateThreshold, Duration.ofNanos(openNanos), slowCallDuration,
+                slowCallRateThreshold, minimumCalls, halfOpenCalls, isFailure, nanoClock);
+    }
+
+    /**
+     * @param minimumCalls how many calls the window must hold before the breaker may open, at most the window size
+     * @return a new breaker with the given minimum
+     */
+    public CircuitBreaker withMinimumCalls(int minimumCalls) {
+        return new CircuitBreaker(windowSize, failureRateThreshold, Duration.ofNanos(openNanos), Duration.ofNanos(slowCallNanos),
+                slowCallRateThreshold, minimumCalls, halfOpenCalls, isFailure, nanoClock);
+    }
+
+    /**
+     * @param halfOpenCalls how many trial calls must succeed when half open for the breaker to close
+     * @return a new breaker with the given number of trial calls
+     */
+    public CircuitBreaker withHalfOpenCalls(int halfOpenCalls) {
+        return new CircuitBreaker(windowSize, failureRateThreshold, Duration.ofNanos(openNanos), Duration.ofNanos(slowCallNanos),
+                slowCallRateThreshold, minimumCalls, halfOpenCalls, isFailure, nanoClock);
+    }
+
+    /**
+     * @param isFailure which exceptions count as failures; others are rethrown but count as successes,
+     *                  for example exceptions for bad requests, which say nothing about the dependency's health
+     * @return a new breaker with the given classification
+     */
+    public CircuitBreaker withFailurePredicate(Predicate<? super Exception> isFailure) {
+        return new CircuitBreaker(windowSize, failureRateThreshold, Duration.ofNanos(openNanos), Duration.ofNanos(slowCallNanos),
+                slowCallRateThreshold, minimumCalls, halfOpenCalls, isFailure, nanoClock);
+    }
+
+    CircuitBreaker withClock(LongSupplier clock) {
+        return new CircuitBreaker(windowSize, failureRateThreshold, Duration.ofNanos(openNanos), Duration.ofNanos(slowCallNanos),
+                slowCallRateThreshold, minimumCalls, halfOpenCalls, isFailure, clock);
+    }
+
+    /**
+     * @param function the function to protect
+     * @param <A> the type of the input to the function
+     * @param <B> the type of the result of the function
+     * @return a function that calls through this breaker, throwing {@link CircuitOpenException} when it refuses
+     */
+    public <A, B> ThrowingFunction<A, B> decorate(ThrowingFunction<A, B> function) {
+        return item -> {
+            final Phase admission = acquire();
+            final long start = slowCallNanos > 0 ? nanoClock.getAsLong() : 0;
+            final B result;
+            try {
+                result = function.apply(item);
+            } catch (Exception e) {
+                record(admission, start, isFailure.test(e));
+                throw e;
+            } catch (Error e) {
+                record(admission, start, true);
+                throw e;
+            }
+            record(admission, start, false);
+            return result;
+        };
+    }
+
+    /**
+     * @param function the function to protect
+     * @param <A> the input type
+     * @param <B> the output type
+     * @return a function that calls through this breaker, throwing {@link CircuitOpenException} when it refuses
+     */
+    public <A, B> IOFunction<A, B> decorateIO(IOFunction<A, B> function) {
+        return in -> {
+            final Phase admission = acquire();
+            final long start = slowCallNanos > 0 ? nanoClock.getAsLong() : 0;
+            final B result;
+            try {
+                result = function.apply(in);
+            } catch (IOException | RuntimeException e) {
+                record(admission, start, isFailure.test(e));
+                throw e;
+            } catch (Error e) {
+                record(admission, start, true);
+                throw e;
+            }
+            record(admission, start, false);
+            return result;
+        };
+    }
+
+    /**
+     * @return the current state
+     */
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /**
+     * @return the share of calls in the window that failed, or 0 if it is empty
+     */
+    public double getFailureRate() {
+        final int n = calls.get();
+        return n <= 0 ? 0 : (double) failures.get() / n;
+    }
+
+    /**
+     * @return the share of calls in the window that were slow, or 0 if it is empty
+     */
+    public double getSlowCallRate() {
+        final int n = calls.get();
+        return n <= 0 ? 0 : (double) slowCalls.get() / n;
+    }
+
+    /**
+     * @return the number of calls refused
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[" + getState() + " failureRate=" + getFailureRate() + " slowCallRate=" + getSlowCallRate()
+                + " rejected=" + getRejectedCount() + "]";
+    }
+
+    private Phase acquire() throws CircuitOpenException {
+        Phase current = phase.get();
+        if (current.state == State.CLOSED) {
+            return current;
+        }
+        final long now = nanoClock.getAsLong();
+        if (current.state == State.OPEN && now - current.until < 0) {
+            rejected.increment();
+            throw new CircuitOpenException("Circuit breaker is open");
+        }
+        if (now - current.until >= 0) {
+            // Open long enough, or the trials are overdue: whoever wins hands out a fresh set of trial permits
+            final Phase next = new Phase(State.HALF_OPEN, now + openNanos, halfOpenCalls);
+            current = phase.compareAndSet(current, next) ? next : phase.get();
+            if (current.state == State.CLOSED) {
+                return current;
+            }
+        }
+        if (current.state == State.HALF_OPEN && current.permits.get() > 0 && current.permits.getAndDecrement() > 0) {
+            return current;
+        }
+        rejected.increment();
+        throw new CircuitOpenException("Circuit breaker is " + (current.state == State.OPEN ? "open" : "half open, awaiting trial calls"));
+    }
+
+    private void record(Phase admission, long start, boolean failed) {
+        // Calls admitted in an earlier phase say nothing about the current one
+        if (phase.get() != admission) {
+            return;
+        }
+        int outcome = PRESENT | (failed ? FAILED : 0);
+        if (slowCallNanos > 0 && nanoClock.getAsLong() - start >= slowCallNanos) {
+            outcome |= SLOW;
+        }
+        if (admission.state == State.HALF_OPEN) {
+            recordTrial(admission, outcome);
+            return;
+        }
+        final int slot = (int) Math.floorMod(cursor.getAndIncrement(), (long) windowSize);
+        final int previous = window.getAndSet(slot, outcome);
+        if (previous == outcome) {
+            return;
+        }
+        if ((previous & PRESENT) == 0) {
+            calls.incrementAndGet();
+        }
+        final int failureDelta = bit(outcome, FAILED) - bit(previous, FAILED);
+        if (failureDelta != 0) {
+            failures.addAndGet(failureDelta);
+        }
+        final int slowDelta = bit(outcome, SLOW) - bit(previous, SLOW);
+        if (slowDelta != 0) {
+            slowCalls.addAndGet(slowDelta);
+        }
+        if ((outcome & (FAILED | SLOW)) != 0 && shouldOpen()) {
+            open(admission);
+        }
+    }
+
+    private void recordTrial(Phase trials, int outcome) {
+        if ((outcome & (FAILED | SLOW)) != 0) {
+            open(trials);
+        } else if (trials.successes.incrementAndGet() == halfOpenCalls) {
+            // Only stragglers from before the breaker opened can still write to the window, and they are rare
+            for (int i = 0; i < windowSize; i++) {
+                window.set(i, 0);
+            }
+            calls.set(0);
+            failures.set(0);
+            slowCalls.set(0);
+            phase.compareAndSet(trials, new Phase(State.CLOSED, 0, 0));
+        }
+    }
+
+    private boolean shouldOpen() {
+        final int n = calls.get();
+        return n >= minimumCalls
+                && (failures.get() >= failureRateThreshold * n || slowCallNanos > 0 && slowCalls.get() >= slowCallRateThreshold * n);
+    }
+
+    private void open(Phase from) {
+        // Only the call that moves the breaker out of the phase it was admitted in sets the deadline
+        phase.compareAndSet(from, new Phase(State.OPEN, nanoClock.getAsLong() + openNanos, 0));
+    }
+
+    private static int bit(int outcome, int flag) {
+        return (outcome & flag) == 0 ? 0 : 1;
+    }
+
+    private static void checkRate(String name, double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException(name + " must be above 0 and at most 1, was " + rate);
+        }
+    }
+
+    /**
+     * One stay in a state.  Every transition installs a new phase, so a call can tell whether the breaker is
+     * still in the phase that admitted it.
+     */
+    private static final class Phase {
+        final State state;
+        // When an open breaker may start trials, or when half open trials are overdue
+        final long until;
+        final AtomicInteger permits;
+        final AtomicInteger successes = new AtomicInteger();
+
+        Phase(State state, long until, int permits) {
+            this.state = state;
+            this.until = until;
+            this.permits = new AtomicInteger(permits);
+        }
+    }
+
+    /**
+     * The states of a breaker.
+     */
+    public enum State {
+        /** Calls go through and their outcomes are recorded. */
+        CLOSED,
+        /** Calls are refused. */
+        OPEN,
+        /** A limited number of trial calls go through to decide whether to close. */
+        HALF_OPEN
+    }
+}
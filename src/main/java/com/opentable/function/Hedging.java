@@ -0,0 +1,272 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.opentable.util.LogLinearHistogram;
+
+/**
+ * Hedged requests: if a call has not returned after a delay, start a second attempt and take whichever
+ * succeeds first, cancelling the other.  This trims the latency tail caused by an occasional slow replica at the
+ * cost of a few extra calls, so the decorated function must be safe to call twice, such as a read.
+ *
+ * <p> The delay is either fixed, or a percentile of recent call latencies as seen by callers, so that roughly the
+ * slowest few percent of calls are hedged.  A budget caps hedges at a fraction of calls: each call earns that
+ * fraction of a hedge, up to ten saved, and each hedge spends one.  When the budget is spent, slow calls are simply
+ * waited for, so a dependency that is slow for everyone does not receive extra load.
+ *
+ * <p> Both attempts run on the given executor while the caller waits.  A failure of the first attempt before the
+ * delay is thrown as is, without hedging; once hedged, the call fails only if both attempts fail, with the first
+ * failure thrown and the second added to it as suppressed.
+ */
+@ThreadSafe
+public final class Hedging {
+    private static final long MILLI_TOKENS = 1000;
+    private static final long MAX_TOKENS = 10 * MILLI_TOKENS;
+    private static final int SAMPLES_PER_UPDATE = 256;
+    private static final int SAMPLES_PER_RESET = 16384;
+
+    private final ExecutorService executor;
+    private final long milliTokensPerCall;
+    private final double percentile;
+    private final LogLinearHistogram latencies;
+    private final AtomicInteger samples = new AtomicInteger();
+    private volatile long delayNanos;
+
+    private final AtomicLong tokens = new AtomicLong();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private Hedging(Duration delay, double percentile, double maxHedgeRate, ExecutorService executor) {
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("Delay must not be negative, was " + delay);
+        }
+        if (!(maxHedgeRate >= 0 && maxHedgeRate <= 1)) {
+            throw new IllegalArgumentException("Max hedge rate must be between 0 and 1, was " + maxHedgeRate);
+        }
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.delayNanos = delay.toNanos();
+        this.percentile = percentile;
+        this.latencies = Double.isNaN(percentile) ? null : new LogLinearHistogram();
+        this.milliTokensPerCall = Math.round(maxHedgeRate * MILLI_TOKENS);
+    }
+
+    /**
+     * @param delay how long to wait for the first attempt before starting the second
+     * @param maxHedgeRate the most hedges to make per call on average, such as 0.05
+     * @param executor runs the attempts
+     * @return the hedging policy
+     */
+    public static Hedging fixedDelay(Duration delay, double maxHedgeRate, ExecutorService executor) {
+        return new Hedging(delay, Double.NaN, maxHedgeRate, executor);
+    }
+
+    /**
+     * @param percentile the percentile of recent successful attempt latencies to wait for, such as 95
+     * @param initialDelay the delay to use until enough latencies have been seen
+     * @param maxHedgeRate the most hedges to make per call on average, such as 0.05
+     * @param executor runs the attempts
+     * @return the hedging policy
+     */
+    public static Hedging percentileDelay(double percentile, Duration initialDelay, double maxHedgeRate, ExecutorService executor) {
+        if (!(percentile > 0 && percentile < 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100, was " + percentile);
+        }
+        return new Hedging(initialDelay, percentile, maxHedgeRate, executor);
+    }
+
+    /**
+     * @param function the function to hedge; it may be called twice for one argument
+     * @param <A> the type of the input to the function
+     * @param <B> the type of the result of the function
+     * @return a function that hedges slow calls
+     */
+    public <A, B> ThrowingFunction<A, B> decorate(ThrowingFunction<A, B> function) {
+        return item -> call(function, item);
+    }
+
+    /**
+     * @return the current hedging delay
+     */
+    public Duration getDelay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    /**
+     * @return the number of calls made through this policy
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the number of calls that started a second attempt
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of calls answered by their second attempt
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    private <A, B> B call(ThrowingFunction<A, B> function, A item) throws Exception {
+        calls.increment();
+        earnToken();
+        final Call<B> call = new Call<>();
+        final Future<?> primary = executor.submit(() -> attempt(function, item, call, false));
+        Future<?> hedge = null;
+        try {
+            try {
+                return call.result.get(delayNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (spendToken() && call.addAttempt()) {
+                    try {
+                        hedge = executor.submit(() -> attempt(function, item, call, true));
+                        hedges.increment();
+                    } catch (RejectedExecutionException rejected) {
+                        // Too busy to hedge; keep waiting for the first attempt
+                        call.abandonAttempt();
+                    }
+                }
+            }
+            return call.result.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        } finally {
+            // Cancels the loser, or both if the caller was interrupted
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private <A, B> void attempt(ThrowingFunction<A, B> function, A item, Call<B> call, boolean isHedge) {
+        try {
+            final B value = function.apply(item);
+            // Count before completing, so the counts are current by the time the caller returns
+            if (call.won.compareAndSet(false, true)) {
+                if (isHedge) {
+                    hedgeWins.increment();
+                }
+                // As the caller saw it, including time queued on the executor, since that is what the delay is against
+                recordLatency(System.nanoTime() - call.start);
+                call.result.complete(value);
+            }
+        } catch (Throwable t) {
+            call.failed(t);
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        if (latencies == null) {
+            return;
+        }
+        latencies.record(nanos);
+        final int n = samples.incrementAndGet();
+        if (n % SAMPLES_PER_UPDATE == 0) {
+            delayNanos = latencies.snapshot().getValueAtPercentile(percentile);
+            // Forget old latencies now and then, so the delay follows changes in the dependency
+            if (n >= SAMPLES_PER_RESET && samples.compareAndSet(n, 0)) {
+                latencies.reset();
+            }
+        }
+    }
+
+    private void earnToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS, current + milliTokensPerCall)));
+    }
+
+    private boolean spendToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < MILLI_TOKENS) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - MILLI_TOKENS));
+        return true;
+    }
+
+    /**
+     * The shared state of the attempts of one call.
+     */
+    private static final class Call<B> {
+        final CompletableFuture<B> result = new CompletableFuture<>();
+        final long start = System.nanoTime();
+        final AtomicBoolean won = new AtomicBoolean();
+        // Attempts started and not yet failed; the call fails when this reaches zero
+        private final AtomicInteger running = new AtomicInteger(1);
+        private volatile Throwable firstFailure;
+
+        boolean addAttempt() {
+            int current;
+            do {
+                current = running.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!running.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void failed(Throwable t) {
+            synchronized (this) {
+                if (firstFailure == null) {
+                    firstFailure = t;
+                } else if (firstFailure != t) {
+                    firstFailure.addSuppressed(t);
+                }
+            }
+            abandonAttempt();
+        }
+
+        void abandonAttempt() {
+            if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(firstFailure);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.opentable.util.Optionals.MapAdapter;
+
+/**
+ * Coalesces concurrent calls of a function with equal arguments into one call.
+ *
+ * <p> The first caller for an argument runs the function in its own thread.  Callers that arrive with an equal
+ * argument while it runs wait for it and receive the same result, or the same exception instance, rather than
+ * calling the function again.  Once the call finishes the argument is forgotten, so later callers run the function
+ * afresh; this is not a cache, and is meant to sit behind one such as
+ * {@link com.opentable.util.CachingMapAdapter} so that when a hot key expires only one caller reloads it.
+ *
+ * <p> A call made by the function itself, for the argument it is computing, runs the function again directly rather
+ * than waiting for itself.  Such recursion is then only bounded by the function.
+ *
+ * <p> Arguments must not be null, and must have {@code equals} and {@code hashCode} suitable for a map key.
+ *
+ * @param <A> the type of the input to the function
+ * @param <B> the type of the result of the function
+ */
+@ThreadSafe
+public final class SingleFlight<A, B> implements ThrowingFunction<A, B> {
+    private final ConcurrentHashMap<A, Flight<B>> inFlight = new ConcurrentHashMap<>();
+    private final ThrowingFunction<? super A, ? extends B> function;
+
+    private SingleFlight(ThrowingFunction<? super A, ? extends B> function) {
+        this.function = function;
+    }
+
+    /**
+     * @param function the function to coalesce calls of
+     * @param <A> the type of the input to the function
+     * @param <B> the type of the result of the function
+     * @return a function that shares concurrent calls with equal arguments
+     */
+    public static <A, B> SingleFlight<A, B> of(ThrowingFunction<? super A, ? extends B> function) {
+        return new SingleFlight<>(function);
+    }
+
+    /**
+     * @param function the function to coalesce calls of
+     * @param <A> the type of the input to the function
+     * @param <B> the type of the result of the function
+     * @return a function that shares concurrent calls with equal arguments
+     */
+    public static <A, B> IOFunction<A, B> ofIO(IOFunction<? super A, ? extends B> function) {
+        final SingleFlight<A, B> flight = new SingleFlight<>(function::apply);
+        return in -> {
+            try {
+                return flight.await(in).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + in);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw unchecked(cause);
+            }
+        };
+    }
+
+    /**
+     * @param adapter the lookup to coalesce calls of
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return a lookup that shares concurrent calls with equal keys
+     */
+    public static <K, V> MapAdapter<K, V> mapAdapter(MapAdapter<K, V> adapter) {
+        final SingleFlight<K, Optional<V>> flight = new SingleFlight<>(adapter::getOpt);
+        return key -> {
+            try {
+                return flight.await(key).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for " + key, e);
+            } catch (ExecutionException e) {
+                throw unchecked(e.getCause());
+            }
+        };
+    }
+
+    /**
+     * Call the function, or wait for an identical call already in flight.
+     * @param item the function argument, not null
+     * @return the function result
+     * @throws Exception what the function threw
+     * @throws InterruptedException if interrupted while waiting for another caller's call
+     */
+    @Override
+    public B apply(A item) throws Exception {
+        try {
+            return await(item).get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw unchecked(cause);
+        }
+    }
+
+    /**
+     * @return the number of distinct arguments currently being computed
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Run the call if none is in flight for the argument.
+     * @return a future that is already complete if this thread ran the call
+     */
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private CompletableFuture<B> await(A item) {
+        final Flight<B> mine = new Flight<>();
+        final Flight<B> existing = inFlight.putIfAbsent(item, mine);
+        if (existing != null && existing.leader != Thread.currentThread()) {
+            return existing.result;
+        }
+        try {
+            mine.result.complete(function.apply(item));
+        } catch (Throwable t) {
+            mine.result.completeExceptionally(t);
+        } finally {
+            if (existing == null) {
+                inFlight.remove(item, mine);
+            }
+        }
+        return mine.result;
+    }
+
+    /**
+     * A call in flight, and the thread running it.
+     */
+    private static final class Flight<B> {
+        final CompletableFuture<B> result = new CompletableFuture<>();
+        final Thread leader = Thread.currentThread();
+    }
+
+    private static RuntimeException unchecked(Throwable cause) {
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        // Only reachable if a function threw a checked exception it does not declare
+        return new CompletionException(cause);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opentable.callback.Callback;
+import com.opentable.callback.CallbackRefusedException;
+import com.opentable.function.IOFunction;
+
+/**
+ * Utility methods for processing large files through memory maps, in parallel.
+ */
+public final class MappedFiles
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFiles.class);
+
+    /**
+     * The chunk size used when none is given.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 << 20;
+
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private MappedFiles() {
+        /* utility class */
+    }
+
+    /**
+     * Process a file of newline terminated records in {@value #DEFAULT_CHUNK_SIZE} byte chunks on the common pool.
+     * @see #processChunks(Path, byte, int, ForkJoinPool, IOFunction, Callback)
+     */
+    public static <R> long processChunks(Path file, IOFunction<? super ByteBuffer, ? extends R> function, Callback<? super R> callback) throws Exception
+    {
+        return processChunks(file, (byte) '\n', DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool(), function, callback);
+    }
+
+    /**
+     * Split a file into chunks of whole records, apply a function to each chunk in parallel, and pass the results
+     * to a callback in file order.
+     * <p>
+     * Each chunk is a read-only {@link ByteBuffer} mapped straight from the file, so no file data is copied to the
+     * heap.  It holds about {@code chunkSize} bytes: the chunk is extended past that to the end of the record that
+     * straddles it, so every chunk but the last ends with the delimiter, and a record longer than a chunk makes a
+     * longer chunk.  The function may read the buffer as it likes but must not keep it, since the mapping is
+     * released once it is unreachable.  A function returning null produces no callback.
+     * <p>
+     * A few chunks per thread of the pool are mapped and processed ahead of the callback, which is called from the
+     * calling thread only, so it need not be thread safe.  Processing stops if the callback throws
+     * {@link CallbackRefusedException}.  If the function or callback throws, chunks not yet processed are cancelled
+     * and the exception is rethrown.
+     * @param file the file to process
+     * @param delimiter the byte ending each record, such as {@code '\n'}
+     * @param chunkSize the size to split the file at, before extending to the end of a record
+     * @param pool the pool to run the function on
+     * @param function processes one chunk
+     * @param callback receives the result of each chunk, in file order
+     * @param <R> the type of chunk result
+     * @return the number of chunks processed
+     * @throws IOException if the file could not be read, a record is over 2 GiB, or the function throws
+     * @throws Exception if the callback throws
+     */
+    public static <R> long processChunks(Path file, byte delimiter, int chunkSize, ForkJoinPool pool,
+            IOFunction<? super ByteBuffer, ? extends R> function, Callback<? super R> callback) throws Exception
+    {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive, was " + chunkSize);
+        }
+        final int maxPending = 2 * pool.getParallelism();
+        final Deque<ForkJoinTask<R>> pending = new ArrayDeque<>(maxPending);
+        long chunks = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            long start = 0;
+            while (start < size || !pending.isEmpty()) {
+                while (start < size && pending.size() < maxPending) {
+                    final long end = chunkEnd(channel, Math.min(size, start + chunkSize), size, delimiter, scan);
+                    if (end - start > Integer.MAX_VALUE) {
+                        throw new IOException("Record at " + start + " in " + file + " is longer than 2 GiB");
+                    }
+                    final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    pending.add(pool.submit(() -> apply(function, chunk)));
+                    start = end;
+                }
+                final R result = join(pending.remove());
+                chunks++;
+                if (result != null) {
+                    callback.call(result);
+                }
+            }
+        } catch (CallbackRefusedException e) {
+            LOG.trace("callback refused", e);
+        } finally {
+            pending.forEach(task -> task.cancel(false));
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the end of the chunk that should end near {@code nominalEnd}: just past the first delimiter at or after
+     * its last byte.
+     */
+    private static long chunkEnd(FileChannel channel, long nominalEnd, long size, byte delimiter, ByteBuffer scan) throws IOException
+    {
+        if (nominalEnd >= size) {
+            return size;
+        }
+        long position = nominalEnd - 1;
+        while (position < size) {
+            scan.clear();
+            final int read = channel.read(scan, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scan.get(i) == delimiter) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static <R> R apply(IOFunction<? super ByteBuffer, ? extends R> function, ByteBuffer chunk)
+    {
+        try {
+            return function.apply(chunk);
+        } catch (IOException e) {
+            // ForkJoinTask would wrap a checked exception anyway; this makes it easy to find again
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <R> R join(ForkJoinTask<R> task) throws IOException, InterruptedException
+    {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import com.opentable.util.Optionals.MapAdapter;
+
+/**
+ * A {@link MapAdapter} that caches the results of another, such as an expensive lookup.
+ * Create one with {@link Optionals#cachingMapAdapter}.
+ *
+ * <p> At most {@code maxSize} results are kept, evicting the least recently used.  Found values are kept for
+ * the TTL, and absent results for the negative TTL, so repeated lookups of missing keys do not all reach the
+ * loader either.  The loader runs outside the cache's lock, so a slow load does not block hits on other keys;
+ * concurrent misses on the same key may each call the loader.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+@ThreadSafe
+public class CachingMapAdapter<K, V> implements MapAdapter<K, V>
+{
+    private final MapAdapter<K, V> loader;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Access ordered, so the eldest entry is the least recently used; guarded by itself
+    private final LinkedHashMap<K, Cached<V>> entries;
+    // A token for the latest load of each key being loaded, removed by invalidation so loads that raced with it
+    // are not cached; guarded by entries
+    private final Map<K, Object> loading = new HashMap<>();
+
+    CachingMapAdapter(MapAdapter<K, V> loader, int maxSize, Duration ttl, Duration negativeTtl, LongSupplier nanoClock)
+    {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive, was " + maxSize);
+        }
+        if (ttl.isNegative() || ttl.isZero() || negativeTtl.isNegative()) {
+            throw new IllegalArgumentException("TTL must be positive and negative TTL not negative, were " + ttl + " and " + negativeTtl);
+        }
+        this.loader = Objects.requireNonNull(loader, "loader");
+        this.maxSize = maxSize;
+        this.ttlNanos = toNanos(ttl);
+        this.negativeTtlNanos = toNanos(negativeTtl);
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<K, Cached<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Cached<V>> eldest)
+            {
+                if (size() > CachingMapAdapter.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get a cached result, or load and cache it.
+     * @param key the key to look up
+     * @return the value, or empty if the loader has none
+     */
+    @Override
+    public Optional<V> getOpt(K key)
+    {
+        final Object token = new Object();
+        synchronized (entries) {
+            final Cached<V> entry = entries.get(key);
+            if (entry != null) {
+                if (nanoClock.getAsLong() - entry.expiresAt < 0) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                evictions.increment();
+            }
+            loading.put(key, token);
+        }
+        misses.increment();
+        final Optional<V> value;
+        try {
+            value = Objects.requireNonNull(loader.getOpt(key), "loader returned null");
+        } catch (RuntimeException | Error e) {
+            synchronized (entries) {
+                loading.remove(key, token);
+            }
+            throw e;
+        }
+        final long ttl = value.isPresent() ? ttlNanos : negativeTtlNanos;
+        final long expiresAt = nanoClock.getAsLong() + ttl;
+        synchronized (entries) {
+            // Not cached if the key was invalidated, or loaded again, since this load started
+            if (loading.remove(key, token) && ttl > 0) {
+                entries.put(key, new Cached<>(value, expiresAt));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Forget the cached result for a key, so the next lookup loads it again.
+     * @param key the key
+     */
+    public void invalidate(K key)
+    {
+        synchronized (entries) {
+            entries.remove(key);
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * Forget all cached results.
+     */
+    public void invalidateAll()
+    {
+        synchronized (entries) {
+            entries.clear();
+            loading.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached results, including any that have expired but not yet been removed
+     */
+    public int size()
+    {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache, whether present or absent
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that called the loader
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results removed because the cache was full or they had expired
+     */
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CachingMapAdapter[size=" + size() + " hits=" + getHitCount() + " misses=" + getMissCount() + " evictions=" + getEvictionCount() + "]";
+    }
+
+    private static long toNanos(Duration duration)
+    {
+        // Cap far-future expiry so adding it to the clock cannot overflow
+        if (duration.compareTo(Duration.ofNanos(Long.MAX_VALUE / 2)) > 0) {
+            return Long.MAX_VALUE / 2;
+        }
+        return duration.toNanos();
+    }
+
+    private static final class Cached<V>
+    {
+        final Optional<V> value;
+        final long expiresAt;
+
+        Cached(Optional<V> value, long expiresAt)
+        {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
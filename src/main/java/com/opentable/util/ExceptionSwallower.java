@@ -13,8 +13,20 @@
  */
 package com.opentable.util;
 
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.concurrent.ThreadSafe;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,4 +115,221 @@ public final class ExceptionSwallower
             return null;
         };
     }
+
+    /**
+     * Create a swallower for exception storms.  Rather than log every swallowed exception, it groups them by type,
+     * logs the first of each type in full, and logs a one-line count per group at most once per
+     * interval, so logging costs the same however many exceptions are thrown.
+     * @param summaryInterval the least time between summaries
+     * @return a swallower with the same transformations as this class, sharing its counts across them
+     */
+    public static Aggregating aggregating(Duration summaryInterval)
+    {
+        return new Aggregating(summaryInterval, System::nanoTime);
+    }
+
+    /**
+     * Swallows exceptions like {@link ExceptionSwallower}, but aggregates their logging.
+     * A summary is logged when an exception is swallowed at least the summary interval after the previous summary,
+     * or when {@link #logSummary()} is called, for example on shutdown or from a scheduled task so the counts
+     * of the last burst are not left unreported.  {@link Error}s are still logged every time and re-thrown.
+     */
+    @ThreadSafe
+    public static final class Aggregating
+    {
+        // Further types share one group, so odd exceptions cannot grow the map without bound
+        private static final int MAX_SITES = 256;
+
+        private final long intervalNanos;
+        private final LongSupplier nanoClock;
+        private final ConcurrentHashMap<Class<?>, Site> sites = new ConcurrentHashMap<>();
+        private final Site otherSites = new Site(null, null);
+        private final LongAdder swallowed = new LongAdder();
+        private final AtomicLong nextSummary;
+
+        Aggregating(Duration summaryInterval, LongSupplier nanoClock)
+        {
+            if (summaryInterval.isNegative() || summaryInterval.isZero()) {
+                throw new IllegalArgumentException("Summary interval must be positive, was " + summaryInterval);
+            }
+            this.intervalNanos = summaryInterval.toNanos();
+            this.nanoClock = nanoClock;
+            this.nextSummary = new AtomicLong(nanoClock.getAsLong() + intervalNanos);
+        }
+
+        /**
+         * Transform a Runnable to record and then swallow any thrown exceptions. However, {@link Error}s are still re-thrown.
+         * @param in the runnable to wrap
+         * @return a runnable that will swallow exceptions
+         */
+        @SuppressWarnings("PMD.AvoidCatchingThrowable")
+        public Runnable swallowExceptions(Runnable in)
+        {
+            return () -> {
+                try {
+                    in.run();
+                } catch (Error tt) {
+                    LOGGER.error("Error (will be rethrown)", tt);
+                    throw tt;
+                } catch (Throwable t) {
+                    record(t);
+                }
+            };
+        }
+
+        /**
+         * Transform a Consumer to record and then swallow any thrown exceptions. However, {@link Error}s are still re-thrown.
+         * @param in a consumer that may throw exceptions
+         * @return a consumer that swallows exceptions
+         */
+        @SuppressWarnings("PMD.AvoidCatchingThrowable")
+        public <T> Consumer<T> swallowExceptions(ThrowingConsumer<T> in)
+        {
+            return (item) -> {
+                try {
+                    in.accept(item);
+                } catch (Error tt) {
+                    LOGGER.error("Error (will be rethrown)", tt);
+                    throw tt;
+                } catch (Throwable t) {
+                    record(t);
+                }
+            };
+        }
+
+        /**
+         * Transform a Function to record and then swallow any thrown exceptions.
+         * If an exception is swallowed, return null. However, {@link Error}s are still re-thrown.
+         * @param in the function to wrap
+         * @return a function that swallows exceptions (recording them and returning null)
+         */
+        @SuppressWarnings("PMD.AvoidCatchingThrowable")
+        public <A, B> Function<A, B> forFunction(ThrowingFunction<A, B> in)
+        {
+            return (item) -> {
+                try {
+                    return in.apply(item);
+                } catch (Error tt) {
+                    LOGGER.error("Error (will be rethrown)", tt);
+                    throw tt;
+                } catch (Throwable t) {
+                    record(t);
+                }
+                return null;
+            };
+        }
+
+        /**
+         * @return the number of exceptions swallowed
+         */
+        public long getSwallowedCount()
+        {
+            return swallowed.sum();
+        }
+
+        /**
+         * @return the number of exceptions swallowed for each group, keyed like
+         *         "java.io.IOException, first at Foo.bar(Foo.java:42)"
+         */
+        public Map<String, Long> getCounts()
+        {
+            return allSites().collect(Collectors.toMap(Site::toString, site -> site.count.sum()));
+        }
+
+        /**
+         * Log the counts of exceptions swallowed since the last summary, if there were any.
+         */
+        public void logSummary()
+        {
+            final String summary = summarize();
+            if (summary != null) {
+                LOGGER.error(summary);
+            }
+        }
+
+        void record(Throwable t)
+        {
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            swallowed.increment();
+            Site site = sites.get(t.getClass());
+            if (site == null) {
+                if (sites.size() < MAX_SITES) {
+                    // Only the first of each type pays for materialising its stack trace
+                    final StackTraceElement[] trace = t.getStackTrace();
+                    final Site first = new Site(t.getClass(), trace.length == 0 ? null : trace[0]);
+                    site = sites.putIfAbsent(t.getClass(), first);
+                    if (site == null) {
+                        site = first;
+                        // Logged in full below, so leave it out of the summaries; a summary may already have run
+                        synchronized (this) {
+                            site.reported++;
+                        }
+                        LOGGER.error("Uncaught exception swallowed; repeats of its type will be counted in a summary", t);
+                    }
+                } else {
+                    site = otherSites;
+                }
+            }
+            site.count.increment();
+
+            final long now = nanoClock.getAsLong();
+            final long due = nextSummary.get();
+            if (now - due >= 0 && nextSummary.compareAndSet(due, now + intervalNanos)) {
+                logSummary();
+            }
+        }
+
+        /**
+         * @return the summary line, or null if nothing was swallowed since the last one
+         */
+        synchronized String summarize()
+        {
+            final StringBuilder summary = new StringBuilder();
+            long total = 0;
+            final List<Site> sorted = allSites().sorted(Comparator.comparingLong((Site site) -> site.count.sum()).reversed())
+                    .collect(Collectors.toList());
+            for (Site site : sorted) {
+                final long count = site.count.sum();
+                final long unreported = count - site.reported;
+                if (unreported > 0) {
+                    site.reported = count;
+                    total += unreported;
+                    summary.append(summary.length() == 0 ? "" : "; ").append(unreported).append(" x ").append(site);
+                }
+            }
+            return total == 0 ? null : "Swallowed " + total + " exceptions since the last summary: " + summary;
+        }
+
+        private Stream<Site> allSites()
+        {
+            return Stream.concat(sites.values().stream(), Stream.of(otherSites))
+                    .filter(site -> site.count.sum() > 0);
+        }
+    }
+
+    private static final class Site
+    {
+        final Class<?> type;
+        final StackTraceElement frame;
+        final LongAdder count = new LongAdder();
+        // Guarded by the owning Aggregating
+        long reported;
+
+        Site(Class<?> type, StackTraceElement frame)
+        {
+            this.type = type;
+            this.frame = frame;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (type == null) {
+                return "exceptions of other types";
+            }
+            return frame == null ? type.getName() + ", first without stack trace" : type.getName() + ", first at " + frame;
+        }
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Supplier} that remembers its value for a time to live, then computes it again.
+ * Reads of a fresh value are a volatile read and a clock read, without locking.
+ *
+ * <p> Created with {@link #of}, the first read after expiry recomputes the value while other readers wait for it.
+ * Created with {@link #refreshingAhead}, only the very first read waits: once the value expires, the next read
+ * starts one recomputation on an executor and every read keeps getting the old value until it finishes.  If that
+ * recomputation throws, the failure is logged, the old value is kept, and a later read tries again.
+ *
+ * @param <T> the type of value
+ */
+@ThreadSafe
+public final class Expiring<T> implements Supplier<T>
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(Expiring.class);
+
+    private final Supplier<? extends T> supplier;
+    private final long ttlNanos;
+    private final Executor refreshExecutor;
+    private final LongSupplier nanoClock;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final AtomicReference<Snapshot<T>> current = new AtomicReference<>();
+
+    Expiring(Supplier<? extends T> supplier, Duration ttl, Executor refreshExecutor, LongSupplier nanoClock)
+    {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("TTL must be positive, was " + ttl);
+        }
+        this.supplier = Objects.requireNonNull(supplier, "supplier");
+        this.ttlNanos = ttl.toNanos();
+        this.refreshExecutor = refreshExecutor;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param supplier computes the value
+     * @param ttl how long each value is used for
+     * @param <T> the type of value
+     * @return a supplier that recomputes the value when a read finds it expired
+     */
+    public static <T> Expiring<T> of(Supplier<? extends T> supplier, Duration ttl)
+    {
+        return new Expiring<>(supplier, ttl, null, System::nanoTime);
+    }
+
+    /**
+     * @param supplier computes the value
+     * @param ttl how long each value is used for before a refresh is started
+     * @param executor runs refreshes
+     * @param <T> the type of value
+     * @return a supplier that serves the old value while an expired one is recomputed in the background
+     */
+    public static <T> Expiring<T> refreshingAhead(Supplier<? extends T> supplier, Duration ttl, Executor executor)
+    {
+        return new Expiring<>(supplier, ttl, Objects.requireNonNull(executor, "executor"), System::nanoTime);
+    }
+
+    /**
+     * @return the current value, computing it if there is none or, unless refreshing ahead, if it has expired
+     */
+    @Override
+    public T get()
+    {
+        final Snapshot<T> snapshot = current.get();
+        if (snapshot != null) {
+            if (nanoClock.getAsLong() - snapshot.expiresAt < 0) {
+                return snapshot.value;
+            }
+            if (refreshExecutor != null) {
+                startRefresh(snapshot);
+                return snapshot.value;
+            }
+        }
+        return compute(snapshot);
+    }
+
+    /**
+     * Forget the value, so the next read computes it again and waits for it.
+     */
+    public void invalidate()
+    {
+        current.set(null);
+    }
+
+    private synchronized T compute(Snapshot<T> seen)
+    {
+        final Snapshot<T> snapshot = current.get();
+        // Another reader may have computed it while this one waited for the lock
+        if (snapshot != seen && snapshot != null) {
+            return snapshot.value;
+        }
+        final T value = supplier.get();
+        current.set(snapshot(value));
+        return value;
+    }
+
+    private Snapshot<T> snapshot(T value)
+    {
+        return new Snapshot<>(value, nanoClock.getAsLong() + ttlNanos);
+    }
+
+    private void startRefresh(Snapshot<T> expired)
+    {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    // Only replace the value this refresh was started for, not one invalidated or computed since
+                    current.compareAndSet(expired, snapshot(supplier.get()));
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Refresh failed, keeping the previous value", e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+            LOGGER.warn("Refresh rejected, keeping the previous value", e);
+        }
+    }
+
+    private static final class Snapshot<T>
+    {
+        final T value;
+        final long expiresAt;
+
+        Snapshot(T value, long expiresAt)
+        {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link Supplier} that computes its value once, on first use, and then returns it without locking.
+ * If the computation throws, nothing is remembered and the next call tries again.  Null values are allowed.
+ * Being a {@link Supplier}, it can be passed straight to {@link Optionals#unless} for an expensive fallback
+ * that should only be computed once.
+ *
+ * @param <T> the type of value
+ */
+@ThreadSafe
+public final class Lazy<T> implements Supplier<T>
+{
+    private static final Object UNSET = new Object();
+
+    // Cleared once the value is set, so whatever it captured can be collected
+    private Supplier<? extends T> supplier;
+    private volatile Object value = UNSET;
+
+    private Lazy(Supplier<? extends T> supplier)
+    {
+        this.supplier = Objects.requireNonNull(supplier, "supplier");
+    }
+
+    /**
+     * @param supplier computes the value; called at most once unless it throws
+     * @param <T> the type of value
+     * @return a supplier that computes the value on first use
+     */
+    public static <T> Lazy<T> of(Supplier<? extends T> supplier)
+    {
+        return new Lazy<>(supplier);
+    }
+
+    /**
+     * @return the value, computing it if this is the first call
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get()
+    {
+        Object result = value;
+        if (result == UNSET) {
+            synchronized (this) {
+                result = value;
+                if (result == UNSET) {
+                    result = supplier.get();
+                    value = result;
+                    supplier = null;
+                }
+            }
+        }
+        return (T) result;
+    }
+
+    /**
+     * @return true if the value has been computed
+     */
+    public boolean isInitialized()
+    {
+        return value != UNSET;
+    }
+
+    @Override
+    public String toString()
+    {
+        final Object result = value;
+        return result == UNSET ? "Lazy[not initialized]" : "Lazy[" + result + "]";
+    }
+}
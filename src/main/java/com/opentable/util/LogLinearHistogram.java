@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A fixed-size histogram of non-negative longs, such as latencies in nanoseconds.
+ * Each power of two is split into 32 linear buckets, so any recorded value is reported within about 3%.
+ * Recording is lock-free and never allocates; {@link #snapshot()} copies the counts for percentile queries.
+ * Snapshots taken while values are being recorded are not atomic, but every value is counted exactly once.
+ */
+@ThreadSafe
+public class LogLinearHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value.  Negative values are recorded as zero.
+     * @param value the value to record
+     */
+    public void record(long value)
+    {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(v));
+        sum.addAndGet(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * Forget all recorded values.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Copy the current counts.
+     * @return a snapshot to compute percentiles from
+     */
+    public Snapshot snapshot()
+    {
+        final long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the largest value that falls into the given bucket
+     */
+    static long highestValueIn(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        final long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * A point-in-time copy of a {@link LogLinearHistogram}.
+     */
+    public static final class Snapshot
+    {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max)
+        {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * @return the largest recorded value
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * @return the mean of the recorded values, or 0 if there are none
+         */
+        public double getMean()
+        {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Get the value at a percentile, for example 99.9.
+         * @param percentile the percentile, between 0 and 100
+         * @return the smallest bucket bound at or below which the given percentage of values fall, never above {@link #getMax()}
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100, was " + percentile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueIn(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Summarize, interpreting values as nanoseconds.
+         * @return a summary like "count=10 p50=1.2ms p99=3.4ms max=4.0ms"
+         */
+        @Override
+        public String toString()
+        {
+            return "count=" + count
+                    + " p50=" + formatNanos(getValueAtPercentile(50))
+                    + " p90=" + formatNanos(getValueAtPercentile(90))
+                    + " p99=" + formatNanos(getValueAtPercentile(99))
+                    + " p99.9=" + formatNanos(getValueAtPercentile(99.9))
+                    + " max=" + formatNanos(max);
+        }
+
+        private static String formatNanos(long nanos)
+        {
+            if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+                return nanos + "ns";
+            }
+            if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+                return String.format("%.1fus", nanos / 1e3);
+            }
+            if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+                return String.format("%.1fms", nanos / 1e6);
+            }
+            return String.format("%.1fs", nanos / 1e9);
+        }
+    }
+}
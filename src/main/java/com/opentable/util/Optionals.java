@@ -13,6 +13,7 @@
  */
 package com.opentable.util;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -42,6 +43,10 @@ public final class Optionals {
      * is not present.
      * </p>
      * e.g.: z = unless(x).apply(() -&gt; somePossiblyExpensiveExpressionResultingInAnX);
+     * <p>
+     * The supplier runs on every call with an absent first; pass a {@link Lazy} to compute it at most once,
+     * or an {@link Expiring} to recompute it only after a time to live.
+     * </p>
      *
      * @param first the value to check for presence and use if available
      * @param second alternate value supplier, only evaluate if first is absent
@@ -66,6 +71,9 @@ public final class Optionals {
      * "first" is empty.
      * </p>
      * e.g.: z = unlessOpt(x).apply(() -&gt; somePossiblyExpensiveExpressionResultingInAnOptionalX);
+     * <p>
+     * As with {@link #unless}, a {@link Lazy} or {@link Expiring} supplier avoids recomputing the alternate.
+     * </p>
      *
      * @param first the value to check for presence and use if available
      * @param second a supplier which will be evaluated if "first" is absent
@@ -115,6 +123,21 @@ public final class Optionals {
         return key -> Optional.ofNullable(map.get(key));
     }
 
+    /**
+     * Produces a MapAdapter that caches the results of another, for putting in front of an expensive lookup.
+     * Absent results are cached too, for the negative TTL, so lookups of missing keys don't all reach the loader.
+     * @param loader the MapAdapter to cache, such as a lambda calling a remote service
+     * @param maxSize the most results to keep; the least recently used are evicted beyond it
+     * @param ttl how long to keep found values
+     * @param negativeTtl how long to keep absent results, or zero to not cache them
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return the caching MapAdapter, which also counts hits, misses and evictions
+     */
+    public static <K,V> CachingMapAdapter<K,V> cachingMapAdapter(MapAdapter<K,V> loader, int maxSize, Duration ttl, Duration negativeTtl) {
+        return new CachingMapAdapter<>(loader, maxSize, ttl, negativeTtl, System::nanoTime);
+    }
+
     /**
      * Adapter to create a stream out of an Optional. Because Java streams can't flatMap functions which
      * return Optional. Lame.
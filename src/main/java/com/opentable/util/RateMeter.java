@@ -0,0 +1,249 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Measures the throughput of a stream of items and bytes, such as records read by an I/O loop.
+ * Marking only adds to striped counters, so many threads can mark concurrently without contention and
+ * without reading the clock.  {@link #snapshot()} reports the totals, the mean rates since creation, and
+ * exponentially weighted moving average rates over {@link Window 1, 5 and 15 seconds}.
+ *
+ * <p> The averages are brought up to date whenever a snapshot is taken, treating the rate as constant since
+ * the previous snapshot.  Snapshots may be taken as often or as rarely as convenient: with one snapshot a
+ * second the one second average follows the last second or so, and with rarer snapshots every average
+ * reflects at least the time since the previous one.
+ */
+@ThreadSafe
+public class RateMeter
+{
+    private final LongAdder items = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+
+    // The state of the moving averages, guarded by this
+    private long lastNanos;
+    private long lastItems;
+    private long lastBytes;
+    private boolean primed;
+    private final double[] itemRates = new double[Window.COUNT];
+    private final double[] byteRates = new double[Window.COUNT];
+
+    /**
+     * Create a meter that starts measuring now.
+     */
+    public RateMeter()
+    {
+        this(System::nanoTime);
+    }
+
+    RateMeter(LongSupplier nanoClock)
+    {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.lastNanos = startNanos;
+    }
+
+    /**
+     * Record one item of the given size.
+     * @param size the size of the item in bytes, not negative
+     */
+    public void mark(long size)
+    {
+        items.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * Record several items.
+     * @param count the number of items, not negative
+     * @param size their total size in bytes, not negative
+     */
+    public void mark(long count, long size)
+    {
+        items.add(count);
+        bytes.add(size);
+    }
+
+    /**
+     * Bring the moving averages up to date and copy the current totals and rates.
+     * Counts marked while the snapshot is being taken may be reported in this snapshot or the next.
+     * @return the snapshot
+     */
+    public synchronized Snapshot snapshot()
+    {
+        final long now = nanoClock.getAsLong();
+        final long itemCount = items.sum();
+        final long byteCount = bytes.sum();
+        final long elapsed = now - lastNanos;
+        if (elapsed > 0) {
+            final double seconds = elapsed / 1e9;
+            final double itemRate = (itemCount - lastItems) / seconds;
+            final double byteRate = (byteCount - lastBytes) / seconds;
+            for (Window window : Window.values()) {
+                // The exact decay for a constant rate over an interval of any length
+                final double alpha = primed ? -Math.expm1(-seconds / window.seconds) : 1;
+                itemRates[window.ordinal()] += alpha * (itemRate - itemRates[window.ordinal()]);
+                byteRates[window.ordinal()] += alpha * (byteRate - byteRates[window.ordinal()]);
+            }
+            primed = true;
+            lastNanos = now;
+            lastItems = itemCount;
+            lastBytes = byteCount;
+        }
+        return new Snapshot(itemCount, byteCount, now - startNanos, itemRates.clone(), byteRates.clone());
+    }
+
+    /**
+     * The periods the moving averages are taken over.
+     */
+    public enum Window
+    {
+        /** One second. */
+        ONE_SECOND(1),
+        /** Five seconds. */
+        FIVE_SECONDS(5),
+        /** Fifteen seconds. */
+        FIFTEEN_SECONDS(15);
+
+        static final int COUNT = values().length;
+
+        final double seconds;
+
+        Window(double seconds)
+        {
+            this.seconds = seconds;
+        }
+    }
+
+    /**
+     * A point-in-time copy of a {@link RateMeter}.
+     */
+    public static final class Snapshot
+    {
+        private final long items;
+        private final long bytes;
+        private final long elapsedNanos;
+        private final double[] itemRates;
+        private final double[] byteRates;
+
+        Snapshot(long items, long bytes, long elapsedNanos, double[] itemRates, double[] byteRates)
+        {
+            this.items = items;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.itemRates = itemRates;
+            this.byteRates = byteRates;
+        }
+
+        /**
+         * @return the number of items marked
+         */
+        public long getItems()
+        {
+            return items;
+        }
+
+        /**
+         * @return the number of bytes marked
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * @param unit the unit to return the time in
+         * @return the time since the meter was created
+         */
+        public long getElapsed(TimeUnit unit)
+        {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return items per second since the meter was created
+         */
+        public double getMeanItemRate()
+        {
+            return elapsedNanos <= 0 ? 0 : items * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return bytes per second since the meter was created
+         */
+        public double getMeanByteRate()
+        {
+            return elapsedNanos <= 0 ? 0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param window the period to average over
+         * @return the moving average of items per second
+         */
+        public double getItemRate(Window window)
+        {
+            return itemRates[window.ordinal()];
+        }
+
+        /**
+         * @param window the period to average over
+         * @return the moving average of bytes per second
+         */
+        public double getByteRate(Window window)
+        {
+            return byteRates[window.ordinal()];
+        }
+
+        /**
+         * Append a summary like "items=1200 (40.0/s; 1s 52.3/s 5s 41.0/s 15s 39.8/s) bytes=1.2 MiB (...)".
+         * @param out the builder to append to
+         * @return the builder
+         */
+        public StringBuilder appendTo(StringBuilder out)
+        {
+            out.append("items=").append(items).append(" (");
+            appendDecimal(getMeanItemRate(), out).append("/s;");
+            for (Window window : Window.values()) {
+                out.append(' ').append((long) window.seconds).append("s ");
+                appendDecimal(getItemRate(window), out).append("/s");
+            }
+            Sizes.formatSize(bytes, out.append(") bytes=")).append(" (");
+            Sizes.formatRate(getMeanByteRate(), out).append(';');
+            for (Window window : Window.values()) {
+                out.append(' ').append((long) window.seconds).append("s ");
+                Sizes.formatRate(getByteRate(window), out);
+            }
+            return out.append(')');
+        }
+
+        @Override
+        public String toString()
+        {
+            return appendTo(new StringBuilder(160)).toString();
+        }
+
+        private static StringBuilder appendDecimal(double value, StringBuilder out)
+        {
+            final long tenths = Math.round(value * 10);
+            return out.append(tenths / 10).append('.').append(Math.abs(tenths % 10));
+        }
+    }
+}
@@ -20,50 +20,148 @@ import java.util.concurrent.TimeUnit;
  */
 public final class Sizes
 {
+    private static final String BINARY_PREFIXES = "KMGTPE";
+
     private Sizes() { }
 
     /**
      * Given a size in bytes, format as a pretty size string.
-     * The output will look like "15.4 MB".
-     * @param size in bytes
-     * @return nicely formatted file size (e.g. 15.4 MB)
+     * The output will look like "15.4 MiB".
+     * @param count size in bytes
+     * @return nicely formatted file size (e.g. 15.4 MiB)
      */
     public static String formatSize(long count)
     {
-        return humanReadableByteCount(count, false);
+        return formatSize(count, new StringBuilder(12)).toString();
+    }
+
+    /**
+     * Given a size in bytes, append a pretty size string like "15.4 MiB" to a builder.
+     * Allocates nothing beyond growing the builder, so it is cheap enough for progress and metrics loops.
+     * @param count size in bytes
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder formatSize(long count, StringBuilder out)
+    {
+        if (count < 1024) {
+            return out.append(count).append(" B");
+        }
+        // Each binary prefix is ten more bits
+        final int exp = (Long.SIZE - 1 - Long.numberOfLeadingZeros(count)) / 10;
+        int shift = 10 * exp;
+        final long whole = count >>> shift;
+        long rem = count & ((1L << shift) - 1);
+        // Keep rem * 10 within a long; the dropped bits are far below the printed digit
+        if (shift > 59) {
+            rem >>>= shift - 59;
+            shift = 59;
+        }
+        final long tenths = whole * 10 + ((rem * 10 + (1L << (shift - 1))) >>> shift);
+        return out.append(tenths / 10).append('.').append((char) ('0' + tenths % 10))
+                .append(' ').append(BINARY_PREFIXES.charAt(exp - 1)).append("iB");
+    }
+
+    /**
+     * Parse a size like "15.4 MiB", "2 GB" or "512".  Prefixes with an {@code i} are binary
+     * (KiB is 1024 bytes) and those without are decimal (kB is 1000 bytes), as in IEC 80000-13.
+     * Units are not case sensitive, and the trailing B may be left off.
+     * @param text the size
+     * @return the size in bytes, rounded to the nearest byte
+     * @throws IllegalArgumentException if the text is not a size or the size does not fit in a long
+     */
+    public static long parseSize(CharSequence text)
+    {
+        final int len = text.length();
+        int i = skipSpaces(text, 0);
+        final int start = i;
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        try {
+            while (i < len && isDigit(text.charAt(i))) {
+                whole = Math.addExact(Math.multiplyExact(whole, 10), text.charAt(i++) - '0');
+            }
+            if (i < len && text.charAt(i) == '.') {
+                i++;
+                while (i < len && isDigit(text.charAt(i))) {
+                    // Digits past the 18th cannot change the result
+                    if (scale < 1_000_000_000_000_000_000L) {
+                        fraction = fraction * 10 + text.charAt(i) - '0';
+                        scale *= 10;
+                    }
+                    i++;
+                }
+            }
+            if (i == start || i == start + 1 && text.charAt(start) == '.') {
+                throw new IllegalArgumentException("Invalid size: " + text);
+            }
+            i = skipSpaces(text, i);
+
+            long multiplier = 1;
+            if (i < len && text.charAt(i) != 'b' && text.charAt(i) != 'B') {
+                final int exp = BINARY_PREFIXES.indexOf(Character.toUpperCase(text.charAt(i++))) + 1;
+                if (exp == 0) {
+                    throw new IllegalArgumentException("Invalid size: " + text);
+                }
+                final boolean binary = i < len && (text.charAt(i) == 'i' || text.charAt(i) == 'I');
+                if (binary) {
+                    i++;
+                }
+                for (int e = 0; e < exp; e++) {
+                    multiplier *= binary ? 1024 : 1000;
+                }
+            }
+            if (i < len && (text.charAt(i) == 'b' || text.charAt(i) == 'B')) {
+                i++;
+            }
+            if (skipSpaces(text, i) != len) {
+                throw new IllegalArgumentException("Invalid size: " + text);
+            }
+            return Math.addExact(Math.multiplyExact(whole, multiplier), Math.round((double) fraction / scale * multiplier));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Size too large: " + text, e);
+        }
     }
 
     /**
      * Given a size in bytes and a duration, format as a pretty
-     * throughput string.  The output will look like "15.4 MB/s".
+     * throughput string.  The output will look like "15.4 MiB/s".
+     * For a live rate across many threads, see {@link RateMeter}.
      * @param count size of data transfered
      * @param time amount of time that data was transfered in
      * @param units the unit time is measured in
-     * @return nicely formatted data rate (e.g. 15.4 MB/s)
+     * @return nicely formatted data rate (e.g. 15.4 MiB/s)
      */
     public static String formatRate(long count, long time, TimeUnit units)
     {
-        double rate = count * 1000.0;
-        rate /= TimeUnit.MILLISECONDS.convert(time, units);
-        return formatSize((long) rate) + "/s";
+        // Measure in nanoseconds so short intervals do not truncate to zero
+        final long nanos = Math.max(1, units.toNanos(time));
+        return formatRate(count * 1e9 / nanos, new StringBuilder(14)).toString();
     }
 
-    // User "aioobe" http://stackoverflow.com/users/276052/aioobe
-    // http://stackoverflow.com/questions/3758606/how-to-convert-byte-size-into-human-readable-format-in-java
-    // CC-BY-SA
     /**
-     * Format byte size
-     * @param bytes number of bytes
-     * @param si whether to use SI units (as opposed to binary units, i.e. MB vs MiB)
-     * @return human readable byte count (e.g. 110.6 kB)
+     * Given a rate in bytes per second, append a pretty throughput string like "15.4 MiB/s" to a builder.
+     * @param bytesPerSecond the rate
+     * @param out the builder to append to
+     * @return the builder
      */
-    private static String humanReadableByteCount(long bytes, boolean si) {
-        int unit = si ? 1000 : 1024;
-        if (bytes < unit) {
-            return bytes + " B";
+    public static StringBuilder formatRate(double bytesPerSecond, StringBuilder out)
+    {
+        return formatSize(Math.round(bytesPerSecond), out).append("/s");
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipSpaces(CharSequence text, int from)
+    {
+        int i = from;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
         }
-        int exp = (int) (Math.log(bytes) / Math.log(unit));
-        String pre = (si ? "kMGTPE" : "KMGTPE").charAt(exp-1) + (si ? "" : "i");
-        return String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
+        return i;
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Encode UUIDs as 26 characters of Crockford base32, e.g. {@code 0J6HB7H6NW27QS04HMASW9NF0J}.
+ *
+ * <p> The 128 bits are written most significant first, padded with two leading zero bits, in an alphabet whose
+ * characters are in ASCII order.  Encoded strings therefore sort in the same order as the unsigned 128-bit values,
+ * which for {@link UUIDv7Generator version 7} UUIDs is creation order; this is the layout ULIDs use.  The alphabet
+ * leaves out I, L, O and U, so the encoding survives being read aloud or retyped.  Decoding accepts lower case, and
+ * I and L for 1 and O for 0, as Crockford specifies.
+ *
+ * <p> Characters 0 to 12 hold the most significant half, character 13 straddles the halves, and characters 14 to 25
+ * hold the rest of the least significant half.
+ */
+public final class Base32UUID {
+    /** Length of the encoded form. */
+    public static final int LENGTH = 26;
+
+    private static final byte[] DIGITS = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+        for (char c : "oO".toCharArray()) {
+            VALUES[c] = 0;
+        }
+        for (char c : "iIlL".toCharArray()) {
+            VALUES[c] = 1;
+        }
+    }
+
+    private Base32UUID() {}
+
+    /**
+     * @param uuid the UUID to encode
+     * @return the 26 character encoding
+     */
+    public static String encode(UUID uuid) {
+        return encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @return the 26 character encoding
+     */
+    public static String encode(long msb, long lsb) {
+        final byte[] buf = new byte[LENGTH];
+        encode(msb, lsb, buf, 0);
+        return new String(buf, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Write the encoding as 26 ASCII bytes.
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @param dst the array to write to
+     * @param offset the index to write the first character at
+     */
+    public static void encode(long msb, long lsb, byte[] dst, int offset) {
+        checkRange(offset, dst.length);
+        for (int i = 0; i < LENGTH; i++) {
+            dst[offset + i] = DIGITS[digit(msb, lsb, i)];
+        }
+    }
+
+    /**
+     * Append the encoding to a {@link StringBuilder}.
+     * @param uuid the UUID to encode
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder appendTo(UUID uuid, StringBuilder out) {
+        try {
+            appendTo(uuid, (Appendable) out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    /**
+     * Append the encoding to any {@link Appendable}, such as a {@link java.io.Writer}.
+     * @param uuid the UUID to encode
+     * @param out where to append
+     * @throws IOException if the appendable does
+     */
+    public static void appendTo(UUID uuid, Appendable out) throws IOException {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < LENGTH; i++) {
+            out.append((char) DIGITS[digit(msb, lsb, i)]);
+        }
+    }
+
+    /**
+     * @param src the 26 character encoding
+     * @return the UUID
+     * @throws IllegalArgumentException if the sequence is not a valid encoding
+     */
+    public static UUID decode(CharSequence src) {
+        if (src.length() != LENGTH) {
+            throw invalid(src, 0, src.length());
+        }
+        return new UUID(decodeMostSignificantBits(src, 0), decodeLeastSignificantBits(src, 0));
+    }
+
+    /**
+     * @param src the ASCII bytes to decode
+     * @param offset the index of the first character
+     * @return the UUID
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static UUID decode(byte[] src, int offset) {
+        return new UUID(decodeMostSignificantBits(src, offset), decodeLeastSignificantBits(src, offset));
+    }
+
+    /**
+     * @param src the characters to decode
+     * @param start the index of the first of the 26 characters
+     * @return the most significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the characters are not a valid encoding
+     */
+    public static long decodeMostSignificantBits(CharSequence src, int start) {
+        checkRange(start, src.length());
+        final int first = value(src.charAt(start));
+        long msb = first & 31;
+        int bad = first;
+        for (int i = 1; i < 13; i++) {
+            final int v = value(src.charAt(start + i));
+            msb = msb << 5 | (v & 31);
+            bad |= v;
+        }
+        final int straddle = value(src.charAt(start + 13));
+        // 26 digits hold 130 bits, so the first digit must leave the top two clear
+        if ((bad | straddle) < 0 || first > 7) {
+            throw invalid(src, start, start + LENGTH);
+        }
+        return msb << 1 | straddle >>> 4;
+    }
+
+    /**
+     * @param src the characters to decode
+     * @param start the index of the first of the 26 characters
+     * @return the least significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the characters are not a valid encoding
+     */
+    public static long decodeLeastSignificantBits(CharSequence src, int start) {
+        checkRange(start, src.length());
+        final int straddle = value(src.charAt(start + 13));
+        long lsb = straddle & 15;
+        int bad = straddle;
+        for (int i = 14; i < LENGTH; i++) {
+            final int v = value(src.charAt(start + i));
+            lsb = lsb << 5 | (v & 31);
+            bad |= v;
+        }
+        if (bad < 0) {
+            throw invalid(src, start, start + LENGTH);
+        }
+        return lsb;
+    }
+
+    /**
+     * @param src the ASCII bytes to decode
+     * @param offset the index of the first of the 26 characters
+     * @return the most significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static long decodeMostSignificantBits(byte[] src, int offset) {
+        checkRange(offset, src.length);
+        final int first = value(src[offset] & 0xFF);
+        long msb = first & 31;
+        int bad = first;
+        for (int i = 1; i < 13; i++) {
+            final int v = value(src[offset + i] & 0xFF);
+            msb = msb << 5 | (v & 31);
+            bad |= v;
+        }
+        final int straddle = value(src[offset + 13] & 0xFF);
+        if ((bad | straddle) < 0 || first > 7) {
+            throw invalid(new String(src, offset, LENGTH, StandardCharsets.ISO_8859_1), 0, LENGTH);
+        }
+        return msb << 1 | straddle >>> 4;
+    }
+
+    /**
+     * @param src the ASCII bytes to decode
+     * @param offset the index of the first of the 26 characters
+     * @return the least significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static long decodeLeastSignificantBits(byte[] src, int offset) {
+        checkRange(offset, src.length);
+        final int straddle = value(src[offset + 13] & 0xFF);
+        long lsb = straddle & 15;
+        int bad = straddle;
+        for (int i = 14; i < LENGTH; i++) {
+            final int v = value(src[offset + i] & 0xFF);
+            lsb = lsb << 5 | (v & 31);
+            bad |= v;
+        }
+        if (bad < 0) {
+            throw invalid(new String(src, offset, LENGTH, StandardCharsets.ISO_8859_1), 0, LENGTH);
+        }
+        return lsb;
+    }
+
+    /**
+     * @return the value of the {@code i}th character of the encoding
+     */
+    private static int digit(long msb, long lsb, int i) {
+        final int shift = 125 - 5 * i;
+        if (shift >= 64) {
+            return (int) (msb >>> (shift - 64)) & 31;
+        }
+        if (shift == 60) {
+            return (int) (msb << 4 | lsb >>> 60) & 31;
+        }
+        return (int) (lsb >>> shift) & 31;
+    }
+
+    private static int value(int c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+
+    private static void checkRange(int offset, int length) {
+        if (offset < 0 || offset > length - LENGTH) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + LENGTH + ") out of bounds for length " + length);
+        }
+    }
+
+    private static IllegalArgumentException invalid(CharSequence src, int start, int end) {
+        final int shown = Math.min(end, start + 64);
+        return new IllegalArgumentException("Invalid base32 UUID: " + src.subSequence(start, shown) + (shown < end ? "..." : ""));
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Encode UUIDs as 22 characters of unpadded base64url, e.g. {@code EjRWeJq8Ee-QEjRWeJq8Eg}.
+ *
+ * <p> The encoding is the same as {@code Base64.getUrlEncoder().withoutPadding()} applied to the 16 byte
+ * {@link BinaryUUID binary form}, so other languages can decode it with their standard libraries, and it is safe
+ * in URLs, file names and cache keys.  Unlike the canonical form it does not sort in UUID order; use
+ * {@link Base32UUID} where that matters.  Decoding is strict: the last character must not carry stray bits, so
+ * every UUID has exactly one encoding.
+ *
+ * <p> Characters 0 to 9 hold the top 60 bits of the most significant half, character 10 straddles the halves,
+ * and characters 11 to 21 hold the rest of the least significant half followed by four zero bits.
+ */
+public final class Base64UUID {
+    /** Length of the encoded form. */
+    public static final int LENGTH = 22;
+
+    private static final byte[] DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+        }
+    }
+
+    private Base64UUID() {}
+
+    /**
+     * @param uuid the UUID to encode
+     * @return the 22 character encoding
+     */
+    public static String encode(UUID uuid) {
+        return encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @return the 22 character encoding
+     */
+    public static String encode(long msb, long lsb) {
+        final byte[] buf = new byte[LENGTH];
+        encode(msb, lsb, buf, 0);
+        return new String(buf, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Write the encoding as 22 ASCII bytes.
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @param dst the array to write to
+     * @param offset the index to write the first character at
+     */
+    public static void encode(long msb, long lsb, byte[] dst, int offset) {
+        checkRange(offset, dst.length);
+        for (int i = 0; i < LENGTH; i++) {
+            dst[offset + i] = DIGITS[digit(msb, lsb, i)];
+        }
+    }
+
+    /**
+     * Append the encoding to a {@link StringBuilder}.
+     * @param uuid the UUID to encode
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public static StringBuilder appendTo(UUID uuid, StringBuilder out) {
+        try {
+            appendTo(uuid, (Appendable) out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out;
+    }
+
+    /**
+     * Append the encoding to any {@link Appendable}, such as a {@link java.io.Writer}.
+     * @param uuid the UUID to encode
+     * @param out where to append
+     * @throws IOException if the appendable does
+     */
+    public static void appendTo(UUID uuid, Appendable out) throws IOException {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < LENGTH; i++) {
+            out.append((char) DIGITS[digit(msb, lsb, i)]);
+        }
+    }
+
+    /**
+     * @param src the 22 character encoding
+     * @return the UUID
+     * @throws IllegalArgumentException if the sequence is not a valid encoding
+     */
+    public static UUID decode(CharSequence src) {
+        if (src.length() != LENGTH) {
+            throw invalid(src, 0, src.length());
+        }
+        return new UUID(decodeMostSignificantBits(src, 0), decodeLeastSignificantBits(src, 0));
+    }
+
+    /**
+     * @param src the ASCII bytes to decode
+     * @param offset the index of the first character
+     * @return the UUID
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static UUID decode(byte[] src, int offset) {
+        return new UUID(decodeMostSignificantBits(src, offset), decodeLeastSignificantBits(src, offset));
+    }
+
+    /**
+     * @param src the characters to decode
+     * @param start the index of the first of the 22 characters
+     * @return the most significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the characters are not a valid encoding
+     */
+    public static long decodeMostSignificantBits(CharSequence src, int start) {
+        checkRange(start, src.length());
+        long msb = 0;
+        int bad = 0;
+        for (int i = 0; i < 10; i++) {
+            final int v = value(src.charAt(start + i));
+            msb = msb << 6 | (v & 63);
+            bad |= v;
+        }
+        final int straddle = value(src.charAt(start + 10));
+        if ((bad | straddle) < 0) {
+            throw invalid(src, start, start + LENGTH);
+        }
+        return msb << 4 | straddle >>> 2;
+    }
+
+    /**
+     * @param src the characters to decode
+     * @param start the index of the first of the 22 characters
+     * @return the least significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the characters are not a valid encoding
+     */
+    public static long decodeLeastSignificantBits(CharSequence src, int start) {
+        checkRange(start, src.length());
+        final int straddle = value(src.charAt(start + 10));
+        long lsb = straddle & 3;
+        int bad = straddle;
+        for (int i = 11; i < LENGTH - 1; i++) {
+            final int v = value(src.charAt(start + i));
+            lsb = lsb << 6 | (v & 63);
+            bad |= v;
+        }
+        final int last = value(src.charAt(start + LENGTH - 1));
+        // The last character carries two bits of the UUID and four that must be zero
+        if ((bad | last) < 0 || (last & 0xF) != 0) {
+            throw invalid(src, start, start + LENGTH);
+        }
+        return lsb << 2 | last >>> 4;
+    }
+
+    /**
+     * @param src the ASCII bytes to decode
+     * @param offset the index of the first of the 22 characters
+     * @return the most significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static long decodeMostSignificantBits(byte[] src, int offset) {
+        checkRange(offset, src.length);
+        long msb = 0;
+        int bad = 0;
+        for (int i = 0; i < 10; i++) {
+            final int v = value(src[offset + i] & 0xFF);
+            msb = msb << 6 | (v & 63);
+            bad |= v;
+        }
+        final int straddle = value(src[offset + 10] & 0xFF);
+        if ((bad | straddle) < 0) {
+            throw invalid(new String(src, offset, LENGTH, StandardCharsets.ISO_8859_1), 0, LENGTH);
+        }
+        return msb << 4 | straddle >>> 2;
+    }
+
+    /**
+     * @param src the ASCII bytes to decode
+     * @param offset the index of the first of the 22 characters
+     * @return the least significant bits of the encoded UUID
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static long decodeLeastSignificantBits(byte[] src, int offset) {
+        checkRange(offset, src.length);
+        final int straddle = value(src[offset + 10] & 0xFF);
+        long lsb = straddle & 3;
+        int bad = straddle;
+        for (int i = 11; i < LENGTH - 1; i++) {
+            final int v = value(src[offset + i] & 0xFF);
+            lsb = lsb << 6 | (v & 63);
+            bad |= v;
+        }
+        final int last = value(src[offset + LENGTH - 1] & 0xFF);
+        if ((bad | last) < 0 || (last & 0xF) != 0) {
+            throw invalid(new String(src, offset, LENGTH, StandardCharsets.ISO_8859_1), 0, LENGTH);
+        }
+        return lsb << 2 | last >>> 4;
+    }
+
+    /**
+     * @return the value of the {@code i}th character of the encoding
+     */
+    private static int digit(long msb, long lsb, int i) {
+        if (i < 10) {
+            return (int) (msb >>> (58 - 6 * i)) & 63;
+        }
+        if (i == 10) {
+            return (int) (msb << 2 | lsb >>> 62) & 63;
+        }
+        if (i < LENGTH - 1) {
+            return (int) (lsb >>> (122 - 6 * i)) & 63;
+        }
+        return (int) (lsb << 4) & 63;
+    }
+
+    private static int value(int c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+
+    private static void checkRange(int offset, int length) {
+        if (offset < 0 || offset > length - LENGTH) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + LENGTH + ") out of bounds for length " + length);
+        }
+    }
+
+    private static IllegalArgumentException invalid(CharSequence src, int start, int end) {
+        final int shown = Math.min(end, start + 64);
+        return new IllegalArgumentException("Invalid base64 UUID: " + src.subSequence(start, shown) + (shown < end ? "..." : ""));
+    }
+}
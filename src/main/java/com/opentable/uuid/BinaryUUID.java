@@ -0,0 +1,335 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+/**
+ * Read and write UUIDs in their 16 byte binary form: the most significant bits followed by the least
+ * significant bits, both big-endian, as in RFC 9562 and most databases' {@code uuid} and {@code binary(16)} columns.
+ *
+ * <p> Values are read and written as two longs through {@link VarHandle} views, never byte by byte, and never
+ * through an intermediate array.  {@link ByteBuffer} methods take absolute indexes, work with heap, direct and
+ * read-only buffers regardless of the buffer's {@link ByteBuffer#order() order}, and do not change its position.
+ * The {@code long[]} variants never create {@link UUID} objects, for hot loops over many values.
+ */
+public final class BinaryUUID {
+    /** Length of the binary form. */
+    public static final int BYTES = 16;
+
+    private static final VarHandle ARRAY_LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle BUFFER_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private BinaryUUID() {}
+
+    /**
+     * @param src the array to read from
+     * @param offset the index of the first byte of the UUID
+     * @return the most significant bits of the UUID at the offset
+     */
+    public static long getMostSignificantBits(byte[] src, int offset) {
+        checkRange(offset, src.length);
+        return (long) ARRAY_LONGS.get(src, offset);
+    }
+
+    /**
+     * @param src the array to read from
+     * @param offset the index of the first byte of the UUID
+     * @return the least significant bits of the UUID at the offset
+     */
+    public static long getLeastSignificantBits(byte[] src, int offset) {
+        checkRange(offset, src.length);
+        return (long) ARRAY_LONGS.get(src, offset + 8);
+    }
+
+    /**
+     * @param src the buffer to read from
+     * @param index the index of the first byte of the UUID
+     * @return the most significant bits of the UUID at the index
+     */
+    public static long getMostSignificantBits(ByteBuffer src, int index) {
+        checkRange(index, src.limit());
+        return (long) BUFFER_LONGS.get(src, index);
+    }
+
+    /**
+     * @param src the buffer to read from
+     * @param index the index of the first byte of the UUID
+     * @return the least significant bits of the UUID at the index
+     */
+    public static long getLeastSignificantBits(ByteBuffer src, int index) {
+        checkRange(index, src.limit());
+        return (long) BUFFER_LONGS.get(src, index + 8);
+    }
+
+    /**
+     * Read a UUID.
+     * @param src the array to read from
+     * @param offset the index of the first byte of the UUID
+     * @return the UUID
+     */
+    public static UUID read(byte[] src, int offset) {
+        return new UUID(getMostSignificantBits(src, offset), getLeastSignificantBits(src, offset));
+    }
+
+    /**
+     * Read a UUID.
+     * @param src the buffer to read from
+     * @param index the index of the first byte of the UUID
+     * @return the UUID
+     */
+    public static UUID read(ByteBuffer src, int index) {
+        return new UUID(getMostSignificantBits(src, index), getLeastSignificantBits(src, index));
+    }
+
+    /**
+     * Convert a UUID to a new 16 byte array.
+     * @param uuid the UUID to convert
+     * @return the binary form
+     */
+    public static byte[] toBytes(UUID uuid) {
+        final byte[] result = new byte[BYTES];
+        write(uuid, result, 0);
+        return result;
+    }
+
+    /**
+     * Convert a 16 byte array to a UUID.
+     * @param bytes the binary form
+     * @return the UUID
+     * @throws IllegalArgumentException if the array is not 16 bytes long
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        if (bytes.length != BYTES) {
+            throw new IllegalArgumentException("UUID must be " + BYTES + " bytes, was " + bytes.length);
+        }
+        return read(bytes, 0);
+    }
+
+    /**
+     * Write a UUID.
+     * @param uuid the UUID to write
+     * @param dst the array to write to
+     * @param offset the index to write the first byte at
+     */
+    public static void write(UUID uuid, byte[] dst, int offset) {
+        write(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), dst, offset);
+    }
+
+    /**
+     * Write a UUID given as its two halves.
+     * @param msb the most significant bits
+     * @param lsb the least significant bits
+     * @param dst the array to write to
+     * @param offset the index to write the first byte at
+     */
+    public static void write(long msb, long lsb, byte[] dst, int offset) {
+        checkRange(offset, dst.length);
+        ARRAY_LONGS.set(dst, offset, msb);
+        ARRAY_LONGS.set(dst, offset + 8, lsb);
+    }
+
+    /**
+     * Write a UUID.
+     * @param uuid the UUID to write
+     * @param dst the buffer to write to
+     * @param index the index to write the first byte at
+     */
+    public static void write(UUID uuid, ByteBuffer dst, int index) {
+        write(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), dst, index);
+    }
+
+    /**
+     * Write a UUID given as its two halves.
+     * @param msb the most significant bits
+     * @param lsb the least significant bits
+     * @param dst the buffer to write to
+     * @param index the index to write the first byte at
+     */
+    public static void write(long msb, long lsb, ByteBuffer dst, int index) {
+        checkRange(index, dst.limit());
+        BUFFER_LONGS.set(dst, index, msb);
+        BUFFER_LONGS.set(dst, index + 8, lsb);
+    }
+
+    /**
+     * Read consecutive UUIDs.
+     * @param src the array to read from
+     * @param offset the index of the first byte of the first UUID
+     * @param dst the array to store UUIDs in
+     * @param dstOffset the index in {@code dst} of the first UUID
+     * @param count the number of UUIDs to read
+     */
+    public static void readAll(byte[] src, int offset, UUID[] dst, int dstOffset, int count) {
+        checkBulk(offset, count, src.length);
+        checkRange(dstOffset, count, dst.length);
+        for (int i = 0; i < count; i++) {
+            final int at = offset + i * BYTES;
+            dst[dstOffset + i] = new UUID((long) ARRAY_LONGS.get(src, at), (long) ARRAY_LONGS.get(src, at + 8));
+        }
+    }
+
+    /**
+     * Read consecutive UUIDs into parallel arrays of halves, without creating {@link UUID} objects.
+     * @param src the array to read from
+     * @param offset the index of the first byte of the first UUID
+     * @param msb the array to store most significant bits in
+     * @param lsb the array to store least significant bits in
+     * @param dstOffset the index in {@code msb} and {@code lsb} of the first UUID
+     * @param count the number of UUIDs to read
+     */
+    public static void readAll(byte[] src, int offset, long[] msb, long[] lsb, int dstOffset, int count) {
+        checkBulk(offset, count, src.length);
+        checkRange(dstOffset, count, Math.min(msb.length, lsb.length));
+        for (int i = 0; i < count; i++) {
+            final int at = offset + i * BYTES;
+            msb[dstOffset + i] = (long) ARRAY_LONGS.get(src, at);
+            lsb[dstOffset + i] = (long) ARRAY_LONGS.get(src, at + 8);
+        }
+    }
+
+    /**
+     * Write consecutive UUIDs.
+     * @param src the UUIDs to write
+     * @param srcOffset the index in {@code src} of the first UUID
+     * @param dst the array to write to
+     * @param offset the index to write the first byte of the first UUID at
+     * @param count the number of UUIDs to write
+     */
+    public static void writeAll(UUID[] src, int srcOffset, byte[] dst, int offset, int count) {
+        checkRange(srcOffset, count, src.length);
+        checkBulk(offset, count, dst.length);
+        for (int i = 0; i < count; i++) {
+            final UUID uuid = src[srcOffset + i];
+            final int at = offset + i * BYTES;
+            ARRAY_LONGS.set(dst, at, uuid.getMostSignificantBits());
+            ARRAY_LONGS.set(dst, at + 8, uuid.getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Write consecutive UUIDs from parallel arrays of halves.
+     * @param msb the most significant bits
+     * @param lsb the least significant bits
+     * @param srcOffset the index in {@code msb} and {@code lsb} of the first UUID
+     * @param dst the array to write to
+     * @param offset the index to write the first byte of the first UUID at
+     * @param count the number of UUIDs to write
+     */
+    public static void writeAll(long[] msb, long[] lsb, int srcOffset, byte[] dst, int offset, int count) {
+        checkRange(srcOffset, count, Math.min(msb.length, lsb.length));
+        checkBulk(offset, count, dst.length);
+        for (int i = 0; i < count; i++) {
+            final int at = offset + i * BYTES;
+            ARRAY_LONGS.set(dst, at, msb[srcOffset + i]);
+            ARRAY_LONGS.set(dst, at + 8, lsb[srcOffset + i]);
+        }
+    }
+
+    /**
+     * Read consecutive UUIDs.
+     * @param src the buffer to read from
+     * @param index the index of the first byte of the first UUID
+     * @param dst the array to store UUIDs in
+     * @param dstOffset the index in {@code dst} of the first UUID
+     * @param count the number of UUIDs to read
+     */
+    public static void readAll(ByteBuffer src, int index, UUID[] dst, int dstOffset, int count) {
+        checkBulk(index, count, src.limit());
+        checkRange(dstOffset, count, dst.length);
+        for (int i = 0; i < count; i++) {
+            final int at = index + i * BYTES;
+            dst[dstOffset + i] = new UUID((long) BUFFER_LONGS.get(src, at), (long) BUFFER_LONGS.get(src, at + 8));
+        }
+    }
+
+    /**
+     * Read consecutive UUIDs into parallel arrays of halves, without creating {@link UUID} objects.
+     * @param src the buffer to read from
+     * @param index the index of the first byte of the first UUID
+     * @param msb the array to store most significant bits in
+     * @param lsb the array to store least significant bits in
+     * @param dstOffset the index in {@code msb} and {@code lsb} of the first UUID
+     * @param count the number of UUIDs to read
+     */
+    public static void readAll(ByteBuffer src, int index, long[] msb, long[] lsb, int dstOffset, int count) {
+        checkBulk(index, count, src.limit());
+        checkRange(dstOffset, count, Math.min(msb.length, lsb.length));
+        for (int i = 0; i < count; i++) {
+            final int at = index + i * BYTES;
+            msb[dstOffset + i] = (long) BUFFER_LONGS.get(src, at);
+            lsb[dstOffset + i] = (long) BUFFER_LONGS.get(src, at + 8);
+        }
+    }
+
+    /**
+     * Write consecutive UUIDs.
+     * @param src the UUIDs to write
+     * @param srcOffset the index in {@code src} of the first UUID
+     * @param dst the buffer to write to
+     * @param index the index to write the first byte of the first UUID at
+     * @param count the number of UUIDs to write
+     */
+    public static void writeAll(UUID[] src, int srcOffset, ByteBuffer dst, int index, int count) {
+        checkRange(srcOffset, count, src.length);
+        checkBulk(index, count, dst.limit());
+        for (int i = 0; i < count; i++) {
+            final UUID uuid = src[srcOffset + i];
+            final int at = index + i * BYTES;
+            BUFFER_LONGS.set(dst, at, uuid.getMostSignificantBits());
+            BUFFER_LONGS.set(dst, at + 8, uuid.getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Write consecutive UUIDs from parallel arrays of halves.
+     * @param msb the most significant bits
+     * @param lsb the least significant bits
+     * @param srcOffset the index in {@code msb} and {@code lsb} of the first UUID
+     * @param dst the buffer to write to
+     * @param index the index to write the first byte of the first UUID at
+     * @param count the number of UUIDs to write
+     */
+    public static void writeAll(long[] msb, long[] lsb, int srcOffset, ByteBuffer dst, int index, int count) {
+        checkRange(srcOffset, count, Math.min(msb.length, lsb.length));
+        checkBulk(index, count, dst.limit());
+        for (int i = 0; i < count; i++) {
+            final int at = index + i * BYTES;
+            BUFFER_LONGS.set(dst, at, msb[srcOffset + i]);
+            BUFFER_LONGS.set(dst, at + 8, lsb[srcOffset + i]);
+        }
+    }
+
+    private static void checkRange(int offset, int length) {
+        checkRange(offset, BYTES, length);
+    }
+
+    private static void checkBulk(int offset, int count, int length) {
+        if (count < 0 || count > (Integer.MAX_VALUE - BYTES) / BYTES) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        checkRange(offset, count * BYTES, length);
+    }
+
+    // Checking the whole range up front means a bad bulk call fails before anything is written
+    private static void checkRange(int offset, int size, int length) {
+        if (offset < 0 || size < 0 || offset > length - size) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", " + offset + " + " + size + ") out of bounds for length " + length);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.Arrays;
+
+/**
+ * Linear probing over UUID keys stored inline, two longs per slot, in one flat array.
+ * An all-zero slot is empty, so the nil UUID is tracked separately by subclasses.
+ * Removal shifts later entries back instead of leaving tombstones, so lookups never slow down with churn.
+ * Subclasses that store values in a parallel array follow slot moves through the hooks.
+ */
+abstract class UUIDHashTable {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    long[] keys;
+    int mask;
+    int size;
+    boolean hasNil;
+    private int resizeAt;
+
+    UUIDHashTable(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size must not be negative, was " + expectedSize);
+        }
+        long capacity = 8;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Expected size too large: " + expectedSize);
+        }
+        allocate((int) capacity);
+    }
+
+    /**
+     * @return the number of UUIDs
+     */
+    public int size() {
+        return size + (hasNil ? 1 : 0);
+    }
+
+    /**
+     * @return true if there are no UUIDs
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Remove all UUIDs, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        hasNil = false;
+    }
+
+    static boolean isNil(long msb, long lsb) {
+        return (msb | lsb) == 0;
+    }
+
+    static int hash(long msb, long lsb) {
+        return (int) UUIDSharding.hash(msb, lsb);
+    }
+
+    /**
+     * Find a non-nil key.
+     * @return its slot, or {@code -(slot + 1)} for the empty slot it would be inserted at
+     */
+    final int find(long msb, long lsb) {
+        final long[] k = keys;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            final long m = k[2 * slot];
+            final long l = k[2 * slot + 1];
+            if (m == msb && l == lsb) {
+                return slot;
+            }
+            if ((m | l) == 0) {
+                return -(slot + 1);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Insert a non-nil key that {@link #find} reported missing.
+     * @param missing the negative result of {@link #find}
+     * @return the slot the key now occupies
+     */
+    final int insert(long msb, long lsb, int missing) {
+        int slot = -missing - 1;
+        if (size >= resizeAt) {
+            grow();
+            slot = -find(msb, lsb) - 1;
+        }
+        keys[2 * slot] = msb;
+        keys[2 * slot + 1] = lsb;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Empty a slot, shifting back any later entries of the same probe run that may fill the gap.
+     */
+    final void removeSlot(int slot) {
+        final long[] k = keys;
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            final long m = k[2 * i];
+            final long l = k[2 * i + 1];
+            if ((m | l) == 0) {
+                break;
+            }
+            final int home = hash(m, l) & mask;
+            // The entry may move back if the gap lies between its home slot and where it is now
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                k[2 * gap] = m;
+                k[2 * gap + 1] = l;
+                moved(i, gap);
+                gap = i;
+            }
+        }
+        k[2 * gap] = 0;
+        k[2 * gap + 1] = 0;
+        moved(-1, gap);
+        size--;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int oldCapacity = mask + 1;
+        if (oldCapacity == MAX_CAPACITY) {
+            throw new IllegalStateException("Table is full");
+        }
+        allocate(oldCapacity * 2);
+        for (int from = 0; from < oldCapacity; from++) {
+            final long m = oldKeys[2 * from];
+            final long l = oldKeys[2 * from + 1];
+            if ((m | l) != 0) {
+                final int to = -find(m, l) - 1;
+                keys[2 * to] = m;
+                keys[2 * to + 1] = l;
+                rehashed(from, to);
+            }
+        }
+        rehashDone();
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[2 * capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+        rehashStarted(capacity);
+    }
+
+    /**
+     * A slot's entry moved to another slot of the current table.
+     * @param from the old slot, or -1 if {@code to} was emptied
+     */
+    void moved(int from, int to) {
+    }
+
+    /**
+     * The table is about to be rebuilt at a new capacity.
+     */
+    void rehashStarted(int capacity) {
+    }
+
+    /**
+     * An entry moved from a slot of the old table to a slot of the new one.
+     */
+    void rehashed(int from, int to) {
+    }
+
+    /**
+     * All entries are in the new table.
+     */
+    void rehashDone() {
+    }
+}
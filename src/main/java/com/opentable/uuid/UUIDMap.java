@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A map from UUIDs to values, with keys stored as pairs of longs in one flat array and open addressing.
+ * Unlike a {@code HashMap<UUID, V>} there is no node or {@link UUID} object per entry, so it takes roughly
+ * half the memory and a lookup usually touches one cache line of keys.  Every method has a variant taking the
+ * key's two halves, so hot paths need not create {@link UUID} objects at all.  Null values are not allowed,
+ * so a null result always means the key is absent.
+ *
+ * @param <V> the type of values
+ */
+@NotThreadSafe
+public final class UUIDMap<V> extends UUIDHashTable {
+    private Object[] values;
+    private Object[] rehashing;
+    private V nilValue;
+
+    /**
+     * Create an empty map.
+     */
+    public UUIDMap() {
+        this(0);
+    }
+
+    /**
+     * Create an empty map that holds {@code expectedSize} entries without resizing.
+     * @param expectedSize the number of entries expected
+     */
+    public UUIDMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    /**
+     * @param msb the most significant bits of the key
+     * @param lsb the least significant bits of the key
+     * @return the value for the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long msb, long lsb) {
+        if (isNil(msb, lsb)) {
+            return nilValue;
+        }
+        final int slot = find(msb, lsb);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @param key the key
+     * @return the value for the key, or null if there is none
+     */
+    public V get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb the most significant bits of the key
+     * @param lsb the least significant bits of the key
+     * @return true if the map has a value for the key
+     */
+    public boolean containsKey(long msb, long lsb) {
+        return isNil(msb, lsb) ? hasNil : find(msb, lsb) >= 0;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the map has a value for the key
+     */
+    public boolean containsKey(UUID key) {
+        return containsKey(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb the most significant bits of the key
+     * @param lsb the least significant bits of the key
+     * @param value the value, not null
+     * @return the previous value for the key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long msb, long lsb, V value) {
+        Objects.requireNonNull(value, "value");
+        if (isNil(msb, lsb)) {
+            final V previous = nilValue;
+            nilValue = value;
+            hasNil = true;
+            return previous;
+        }
+        int slot = find(msb, lsb);
+        if (slot >= 0) {
+            final V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        slot = insert(msb, lsb, slot);
+        values[slot] = value;
+        return null;
+    }
+
+    /**
+     * @param key the key
+     * @param value the value, not null
+     * @return the previous value for the key, or null if there was none
+     */
+    public V put(UUID key, V value) {
+        return put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * @param msb the most significant bits of the key
+     * @param lsb the least significant bits of the key
+     * @param value the value, not null
+     * @return the existing value for the key, or null if there was none and {@code value} was added
+     */
+    public V putIfAbsent(long msb, long lsb, V value) {
+        final V existing = get(msb, lsb);
+        return existing != null ? existing : put(msb, lsb, value);
+    }
+
+    /**
+     * @param key the key
+     * @param value the value, not null
+     * @return the existing value for the key, or null if there was none and {@code value} was added
+     */
+    public V putIfAbsent(UUID key, V value) {
+        return putIfAbsent(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * @param msb the most significant bits of the key
+     * @param lsb the least significant bits of the key
+     * @return the removed value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long msb, long lsb) {
+        if (isNil(msb, lsb)) {
+            final V previous = nilValue;
+            nilValue = null;
+            hasNil = false;
+            return previous;
+        }
+        final int slot = find(msb, lsb);
+        if (slot < 0) {
+            return null;
+        }
+        final V previous = (V) values[slot];
+        removeSlot(slot);
+        return previous;
+    }
+
+    /**
+     * @param key the key
+     * @return the removed value, or null if there was none
+     */
+    public V remove(UUID key) {
+        return remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        Arrays.fill(values, null);
+        nilValue = null;
+    }
+
+    /**
+     * Visit every entry, in no particular order.  The map must not be modified while visiting.
+     * @param action receives the halves of each key and its value
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> action) {
+        if (hasNil) {
+            action.accept(0, 0, nilValue);
+        }
+        final long[] k = keys;
+        for (int i = 0; i < values.length; i++) {
+            if ((k[2 * i] | k[2 * i + 1]) != 0) {
+                action.accept(k[2 * i], k[2 * i + 1], (V) values[i]);
+            }
+        }
+    }
+
+    @Override
+    void moved(int from, int to) {
+        values[to] = from < 0 ? null : values[from];
+    }
+
+    @Override
+    void rehashStarted(int capacity) {
+        rehashing = values;
+        values = new Object[capacity];
+    }
+
+    @Override
+    void rehashed(int from, int to) {
+        values[to] = rehashing[from];
+    }
+
+    @Override
+    void rehashDone() {
+        rehashing = null;
+    }
+
+    /**
+     * Receives entries with their keys as two halves.
+     * @param <V> the type of values
+     */
+    @FunctionalInterface
+    public interface Visitor<V> {
+        /**
+         * @param msb the most significant bits of the key
+         * @param lsb the least significant bits of the key
+         * @param value the value
+         */
+        void accept(long msb, long lsb, V value);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.UUID;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A set of UUIDs stored as pairs of longs in one flat array, with open addressing.
+ * Unlike a {@code HashSet<UUID>} there is no node or {@link UUID} object per element, so it takes well under half
+ * the memory and a lookup touches one cache line in the common case.  Every method has a variant taking the
+ * UUID's two halves, so hot paths need not create {@link UUID} objects at all.
+ */
+@NotThreadSafe
+public final class UUIDSet extends UUIDHashTable {
+    /**
+     * Create an empty set.
+     */
+    public UUIDSet() {
+        this(0);
+    }
+
+    /**
+     * Create an empty set that holds {@code expectedSize} UUIDs without resizing.
+     * @param expectedSize the number of UUIDs expected
+     */
+    public UUIDSet(int expectedSize) {
+        super(expectedSize);
+    }
+
+    /**
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @return true if the set contains the UUID
+     */
+    public boolean contains(long msb, long lsb) {
+        return isNil(msb, lsb) ? hasNil : find(msb, lsb) >= 0;
+    }
+
+    /**
+     * @param uuid the UUID
+     * @return true if the set contains the UUID
+     */
+    public boolean contains(UUID uuid) {
+        return contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @return true if the UUID was not already in the set
+     */
+    public boolean add(long msb, long lsb) {
+        if (isNil(msb, lsb)) {
+            final boolean added = !hasNil;
+            hasNil = true;
+            return added;
+        }
+        final int slot = find(msb, lsb);
+        if (slot >= 0) {
+            return false;
+        }
+        insert(msb, lsb, slot);
+        return true;
+    }
+
+    /**
+     * @param uuid the UUID
+     * @return true if the UUID was not already in the set
+     */
+    public boolean add(UUID uuid) {
+        return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @return true if the UUID was in the set
+     */
+    public boolean remove(long msb, long lsb) {
+        if (isNil(msb, lsb)) {
+            final boolean removed = hasNil;
+            hasNil = false;
+            return removed;
+        }
+        final int slot = find(msb, lsb);
+        if (slot < 0) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * @param uuid the UUID
+     * @return true if the UUID was in the set
+     */
+    public boolean remove(UUID uuid) {
+        return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Visit every UUID, in no particular order.  The set must not be modified while visiting.
+     * @param action receives the halves of each UUID
+     */
+    public void forEach(Visitor action) {
+        if (hasNil) {
+            action.accept(0, 0);
+        }
+        final long[] k = keys;
+        for (int i = 0; i < k.length; i += 2) {
+            if ((k[i] | k[i + 1]) != 0) {
+                action.accept(k[i], k[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Receives UUIDs as their two halves.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * @param msb the most significant bits of the UUID
+         * @param lsb the least significant bits of the UUID
+         */
+        void accept(long msb, long lsb);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Map UUIDs to shards, evenly and stably.
+ *
+ * <p> {@code uuid.hashCode() % n} folds the UUID to 32 bits with XOR, which is uneven for UUIDs with structure
+ * such as version 1 or 7, and moves almost every key when {@code n} changes.  Here both halves are mixed into a
+ * well-distributed 64-bit hash first.  {@link #bucketOf(UUID, int)} then uses jump consistent hashing (Lamping and
+ * Veach, 2014): buckets are numbered {@code 0} to {@code n - 1}, and growing to {@code n + 1} moves only the
+ * {@code 1 / (n + 1)} of keys that belong in the new bucket.  It is the same function as Guava's
+ * {@code Hashing.consistentHash}, applied to {@link #hash(long, long)}.
+ *
+ * <p> For named nodes with different capacities, or where any node may leave, use {@link #weighted}, which does
+ * weighted rendezvous hashing: removing a node moves only that node's keys, spread over the others in proportion
+ * to their weights.
+ */
+public final class UUIDSharding {
+    private UUIDSharding() {}
+
+    /**
+     * @param uuid the UUID to route
+     * @param buckets the number of buckets
+     * @return the bucket, between {@code 0} and {@code buckets - 1}
+     */
+    public static int bucketOf(UUID uuid, int buckets) {
+        return bucketOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), buckets);
+    }
+
+    /**
+     * @param msb the most significant bits of the UUID to route
+     * @param lsb the least significant bits of the UUID to route
+     * @param buckets the number of buckets
+     * @return the bucket, between {@code 0} and {@code buckets - 1}
+     */
+    public static int bucketOf(long msb, long lsb, int buckets) {
+        return jumpConsistentHash(hash(msb, lsb), buckets);
+    }
+
+    /**
+     * Jump consistent hash.
+     * @param key a well-mixed 64-bit key
+     * @param buckets the number of buckets
+     * @return the bucket, between {@code 0} and {@code buckets - 1}
+     */
+    public static int jumpConsistentHash(long key, int buckets) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Buckets must be positive, was " + buckets);
+        }
+        long k = key;
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            k = k * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((k >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * A 64-bit hash of a UUID in which every input bit affects every output bit.
+     * @param msb the most significant bits of the UUID
+     * @param lsb the least significant bits of the UUID
+     * @return the hash
+     */
+    public static long hash(long msb, long lsb) {
+        return mix(msb * 0x9E3779B97F4A7C15L + lsb);
+    }
+
+    /**
+     * Route UUIDs to weighted nodes with rendezvous hashing.  Each lookup scores every node, so this suits tens
+     * of nodes rather than thousands.
+     * @param nodes the nodes
+     * @param id a stable name for each node; the same names give the same routing in every process
+     * @param weight the relative capacity of each node, positive
+     * @return the router
+     */
+    public static <N> Weighted<N> weighted(Collection<? extends N> nodes, Function<? super N, String> id, ToDoubleFunction<? super N> weight) {
+        return new Weighted<>(nodes, id, weight);
+    }
+
+    /**
+     * The murmur3 64-bit finalizer.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Weighted rendezvous (highest random weight) routing over a fixed set of nodes.
+     * @param <N> the type of node
+     */
+    @Immutable
+    public static final class Weighted<N> {
+        private final List<N> nodes;
+        private final long[] seeds;
+        private final double[] weights;
+
+        Weighted(Collection<? extends N> nodes, Function<? super N, String> id, ToDoubleFunction<? super N> weight) {
+            if (nodes.isEmpty()) {
+                throw new IllegalArgumentException("No nodes");
+            }
+            this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+            this.seeds = new long[nodes.size()];
+            this.weights = new double[nodes.size()];
+            for (int i = 0; i < seeds.length; i++) {
+                final N node = this.nodes.get(i);
+                seeds[i] = seed(id.apply(node));
+                weights[i] = weight.applyAsDouble(node);
+                if (!(weights[i] > 0) || Double.isInfinite(weights[i])) {
+                    throw new IllegalArgumentException("Weight of " + node + " must be positive and finite, was " + weights[i]);
+                }
+            }
+        }
+
+        /**
+         * @return the nodes, in the order given
+         */
+        public List<N> getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @param uuid the UUID to route
+         * @return the node that owns it
+         */
+        public N nodeFor(UUID uuid) {
+            return nodeFor(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+
+        /**
+         * @param msb the most significant bits of the UUID to route
+         * @param lsb the least significant bits of the UUID to route
+         * @return the node that owns it
+         */
+        public N nodeFor(long msb, long lsb) {
+            final long key = hash(msb, lsb);
+            int best = 0;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < seeds.length; i++) {
+                // A uniform draw in (0, 1) per node and key; -w / ln(u) makes each node win in proportion to its weight
+                final double u = ((mix(key ^ seeds[i]) >>> 11) + 0.5) * 0x1.0p-53;
+                final double score = -weights[i] / Math.log(u);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            return nodes.get(best);
+        }
+
+        private static long seed(String id) {
+            // FNV-1a, which unlike String.hashCode is 64 bits wide
+            long h = 0xCBF29CE484222325L;
+            for (int i = 0; i < id.length(); i++) {
+                h = (h ^ id.charAt(i)) * 0x100000001B3L;
+            }
+            return mix(h);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Generates time-ordered version 7 UUIDs, as specified by RFC 9562.
+ *
+ * <p> The first 48 bits are the Unix time in milliseconds, so UUIDs generated close together sort close together,
+ * which keeps inserts into B-tree indexes local.  The 12 bits after the version hold a sequence number, which makes
+ * every UUID from one generator greater than the previous one, across all threads.  Timestamp and sequence live in
+ * a single {@link AtomicLong}, so claiming a value is one compare-and-set.  If more than 4096 UUIDs are generated
+ * in a millisecond, the timestamp runs ahead of the clock until the rate drops, as the RFC allows.
+ *
+ * <p> The remaining 62 bits come from {@link ThreadLocalRandom}, so threads never contend for randomness as they
+ * do with {@link UUID#randomUUID()}.  That makes the UUIDs unique but not unguessable; do not use them as secrets.
+ */
+@ThreadSafe
+public final class UUIDv7Generator {
+    private static final UUIDv7Generator DEFAULT = new UUIDv7Generator(System::currentTimeMillis);
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    private final LongSupplier clock;
+    /** The last timestamp handed out, shifted left by {@link #SEQUENCE_BITS}, plus its sequence number. */
+    private final AtomicLong last = new AtomicLong();
+
+    UUIDv7Generator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return the generator shared by the whole JVM; UUIDs from it are ordered with respect to each other
+     */
+    public static UUIDv7Generator getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return a new generator, whose UUIDs are ordered only with respect to each other
+     */
+    public static UUIDv7Generator create() {
+        return new UUIDv7Generator(System::currentTimeMillis);
+    }
+
+    /**
+     * @return a new UUID, greater than any this generator returned before
+     */
+    public UUID next() {
+        return new UUID(msb(reserve(1)), lsb(ThreadLocalRandom.current()));
+    }
+
+    /**
+     * Fill parallel arrays with the halves of new UUIDs, in increasing order, without creating {@link UUID} objects.
+     * The whole run is claimed at once, so it costs one compare-and-set however long it is.
+     * @param msb the array to store most significant bits in
+     * @param lsb the array to store least significant bits in
+     */
+    public void nextN(long[] msb, long[] lsb) {
+        if (msb.length != lsb.length) {
+            throw new IllegalArgumentException("Arrays must be the same length, were " + msb.length + " and " + lsb.length);
+        }
+        if (msb.length == 0) {
+            return;
+        }
+        final long first = reserve(msb.length);
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < msb.length; i++) {
+            msb[i] = msb(first + i);
+            lsb[i] = lsb(random);
+        }
+    }
+
+    /**
+     * Extract the creation time of a version 7 UUID.
+     * @param uuid the UUID
+     * @return its timestamp, in milliseconds since the epoch
+     * @throws IllegalArgumentException if the UUID is not version 7
+     */
+    public static long timestampOf(UUID uuid) {
+        if (uuid.version() != 7) {
+            throw new IllegalArgumentException("Not a version 7 UUID: " + uuid);
+        }
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+    /**
+     * Claim {@code count} consecutive timestamp and sequence values.
+     * @return the first of them
+     */
+    private long reserve(int count) {
+        final long now = clock.getAsLong() << SEQUENCE_BITS;
+        while (true) {
+            final long prev = last.get();
+            final long first = Math.max(now, prev + 1);
+            if (last.compareAndSet(prev, first + count - 1)) {
+                return first;
+            }
+        }
+    }
+
+    private static long msb(long timeAndSequence) {
+        return (timeAndSequence >>> SEQUENCE_BITS) << 16 | VERSION | timeAndSequence & ((1 << SEQUENCE_BITS) - 1);
+    }
+
+    private static long lsb(ThreadLocalRandom random) {
+        return VARIANT | random.nextLong() & RANDOM_MASK;
+    }
+}
@@ -15,9 +15,11 @@ package com.opentable.callback;
 
 import static com.google.common.collect.ImmutableList.of;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Lists;
 
@@ -28,6 +30,7 @@ import com.opentable.callback.Callback;
 import com.opentable.callback.CallbackCollector;
 import com.opentable.callback.CallbackRefusedException;
 import com.opentable.callback.Callbacks;
+import com.opentable.util.LogLinearHistogram;
 
 public class TestBatchingCallback
 {
@@ -77,4 +80,23 @@ public class TestBatchingCallback
                 of("c", "d")
             ), items);
     }
+
+    @Test
+    public void testLatencyTracking() throws Exception
+    {
+        CallbackCollector<List<String>> collector = new CallbackCollector<>();
+        BatchingCallback<String> batcher = BatchingCallback.batchInto(2, collector).trackLatency();
+        batcher.call("a");
+        Thread.sleep(20);
+        Callbacks.stream(batcher, "b", "c", "d", "e");
+        batcher.close();
+
+        assertEquals(of(of("a", "b"), of("c", "d"), of("e")), collector.getItems());
+        LogLinearHistogram.Snapshot sojourn = batcher.getSojournTimes().snapshot();
+        LogLinearHistogram.Snapshot oldest = batcher.getOldestItemAges().snapshot();
+        assertEquals(5, sojourn.getCount());
+        assertEquals(3, oldest.getCount());
+        assertTrue(oldest.getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(oldest.getMax(), sojourn.getMax());
+    }
 }
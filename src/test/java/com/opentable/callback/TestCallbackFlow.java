@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import static com.google.common.collect.ImmutableList.of;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestCallbackFlow
+{
+    @Test
+    public void testPublisherToBatchingSubscriber() throws Exception
+    {
+        CallbackCollector<List<String>> collector = new CallbackCollector<>();
+        CallbackPublisher<String> publisher = CallbackPublisher.create();
+        CallbackSubscriber<String> subscriber = CallbackSubscriber.into(BatchingCallback.batchInto(2, collector));
+        publisher.subscribe(subscriber);
+
+        try (BatchingCallback<String> batcher = BatchingCallback.batchInto(3, publisher.batches())) {
+            Callbacks.stream(batcher, "a", "b", "c", "d", "e");
+        }
+        publisher.close();
+
+        subscriber.getCompletion().get(5, TimeUnit.SECONDS);
+        assertEquals(of(of("a", "b"), of("c", "d"), of("e")), collector.getItems());
+    }
+
+    @Test(timeout = 5000)
+    public void testPublisherHonoursDemand() throws Exception
+    {
+        CallbackPublisher<Integer> publisher = CallbackPublisher.create();
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        CallbackCollector<Integer> received = new CallbackCollector<>();
+        publisher.subscribe(new Flow.Subscriber<Integer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s)
+            {
+                subscription.set(s);
+                s.request(2);
+            }
+
+            @Override
+            public void onNext(Integer item)
+            {
+                received.getItems().add(item);
+            }
+
+            @Override
+            public void onError(Throwable t)
+            {
+            }
+
+            @Override
+            public void onComplete()
+            {
+            }
+        });
+
+        CountDownLatch published = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                publisher.callAll(of(1, 2, 3, 4));
+                published.countDown();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        producer.start();
+
+        assertFalse(published.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(of(1, 2), received.getItems());
+
+        subscription.get().request(2);
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        assertEquals(of(1, 2, 3, 4), received.getItems());
+        producer.join();
+    }
+
+    @Test
+    public void testRefusalCancelsPublisher() throws Exception
+    {
+        CallbackPublisher<String> publisher = CallbackPublisher.create();
+        CallbackSubscriber<String> subscriber = CallbackSubscriber.into(item -> {
+            if ("c".equals(item)) {
+                throw new CallbackRefusedException();
+            }
+        }, 16);
+        publisher.subscribe(subscriber);
+
+        publisher.call("a");
+        publisher.call("b");
+        try {
+            publisher.callAll(of("c", "d"));
+            fail();
+        } catch (CallbackRefusedException e) {
+            assertTrue(publisher.isCancelled());
+        }
+        subscriber.getCompletion().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testSubscriberWithSubmissionPublisher() throws Exception
+    {
+        CountingCallback counter = new CountingCallback();
+        CallbackSubscriber<Object> subscriber = CallbackSubscriber.into(counter, 4);
+        try (SubmissionPublisher<Object> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(subscriber);
+            for (int i = 0; i < 100; i++) {
+                publisher.submit(i);
+            }
+        }
+        subscriber.getCompletion().get(5, TimeUnit.SECONDS);
+        assertEquals(100, counter.getCount());
+    }
+
+    @Test
+    public void testCallAfterCloseIsRefused() throws Exception
+    {
+        CallbackPublisher<String> publisher = CallbackPublisher.create();
+        publisher.subscribe(CallbackSubscriber.into(Callbacks.noop(), 4));
+        publisher.close();
+        try {
+            publisher.call("a");
+            fail();
+        } catch (CallbackRefusedException expected) {
+            // ok
+        }
+        try {
+            publisher.callAll(of("a", "b"));
+            fail();
+        } catch (CallbackRefusedException expected) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testErrorCommitsBufferedItems() throws Exception
+    {
+        CallbackCollector<List<String>> collector = new CallbackCollector<>();
+        CallbackPublisher<String> publisher = CallbackPublisher.create();
+        CallbackSubscriber<String> subscriber = CallbackSubscriber.into(BatchingCallback.batchInto(10, collector));
+        publisher.subscribe(subscriber);
+        publisher.call("a");
+        publisher.call("b");
+        IOException failure = new IOException("source failed");
+        publisher.fail(failure);
+        try {
+            subscriber.getCompletion().get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(failure, e.getCause());
+        }
+        assertEquals(of(of("a", "b")), collector.getItems());
+    }
+}
@@ -16,11 +16,16 @@ package com.opentable.callback;
 import static com.google.common.collect.ImmutableList.of;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.google.common.util.concurrent.MoreExecutors;
 
@@ -147,4 +152,91 @@ public class TestExecutorBatchingCallback {
             executor.shutdownNow();
         }
     }
+
+    @Test
+    public void testCommitWaitsAfterEarlierCommit() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CallbackCollector<List<String>> out = new CallbackCollector<>();
+            BatchingCallback<String> batcher = BatchingCallback.batchInto(2, executor, out, false);
+            batcher.call("a");
+            batcher.commit();
+
+            CountDownLatch release = new CountDownLatch(1);
+            executor.submit(() -> release.await(5, TimeUnit.SECONDS));
+            batcher.call("b");
+            release.countDown();
+            batcher.commit();
+
+            assertEquals(of(of("a"), of("b")), out.getItems());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchTimeout() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            CallbackCollector<List<String>> done = new CallbackCollector<>();
+            Callback<List<String>> out = item -> {
+                if (item.contains("stuck")) {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                }
+                done.call(item);
+            };
+            BatchingCallback<String> batcher = BatchingCallback.batchInto(2, executor, out, false, Duration.ofMillis(50));
+            batcher.call("stuck");
+            batcher.call("a");
+            batcher.call("b");
+            batcher.call("c");
+
+            try {
+                batcher.commit();
+                fail();
+            } catch (BatchingCallbackExecutionException bcee) {
+                assertEquals(1, bcee.getSuppressed().length);
+                assertTrue(bcee.getSuppressed()[0] instanceof TimeoutException);
+            }
+            assertEquals(of(of("b", "c")), done.getItems());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseWithDeadline() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch never = new CountDownLatch(1);
+        try {
+            Callback<List<String>> out = item -> {
+                // A sink that ignores interruption entirely
+                while (never.getCount() > 0) {
+                    try {
+                        never.await();
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                }
+            };
+            BatchingCallback<String> batcher = BatchingCallback.batchInto(2, executor, out, false);
+            batcher.call("a");
+
+            long start = System.nanoTime();
+            try {
+                batcher.close(Duration.ofMillis(100));
+                fail();
+            } catch (BatchingCallbackExecutionException bcee) {
+                assertEquals(1, bcee.getSuppressed().length);
+                assertTrue(bcee.getSuppressed()[0] instanceof TimeoutException);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            never.countDown();
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import static com.google.common.collect.ImmutableList.of;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestFairBatchScheduler
+{
+    @Test
+    public void testQuietCallbackIsNotStarved() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        try {
+            FairBatchScheduler scheduler = FairBatchScheduler.create(executor, 1, 1);
+            Callback<List<String>> sink = item -> {
+                release.await();
+                out.call(item);
+            };
+            BatchingCallback<String> blocker = scheduler.batchInto(1, sink, false, 1, 1);
+            BatchingCallback<String> noisy = scheduler.batchInto(1, sink, false, 1, 10);
+            BatchingCallback<String> quiet = scheduler.batchInto(1, sink, false, 1, 10);
+
+            // Batches of one are handed over when the next item arrives
+            Callbacks.stream(blocker, "b0", "b1");
+            Callbacks.stream(noisy, "n1", "n2", "n3", "n4", "n5");
+            Callbacks.stream(quiet, "q1", "q2");
+            release.countDown();
+            noisy.commit();
+            quiet.commit();
+            blocker.commit();
+
+            assertEquals(of(of("b0"), of("n1"), of("q1"), of("n2"), of("n3"), of("n4"), of("n5"), of("q2"), of("b1")),
+                    out.getItems());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWeights() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        try {
+            FairBatchScheduler scheduler = FairBatchScheduler.create(executor, 1, 1);
+            Callback<List<String>> sink = item -> {
+                release.await();
+                out.call(item);
+            };
+            BatchingCallback<String> blocker = scheduler.batchInto(1, sink, false, 1, 1);
+            BatchingCallback<String> heavy = scheduler.batchInto(1, sink, false, 2, 10);
+            BatchingCallback<String> light = scheduler.batchInto(1, sink, false, 1, 10);
+
+            Callbacks.stream(blocker, "b0", "b1");
+            Callbacks.stream(heavy, "h0", "h1", "h2", "h3", "h4", "h5", "h6");
+            Callbacks.stream(light, "l0", "l1", "l2", "l3");
+            release.countDown();
+            heavy.commit();
+            light.commit();
+            blocker.commit();
+
+            assertEquals(of(of("b0"), of("h0"), of("h1"), of("l0"), of("h2"), of("h3"), of("l1"), of("h4"), of("h5"), of("l2"),
+                    of("h6"), of("l3"), of("b1")), out.getItems());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInFlightCap() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try {
+            FairBatchScheduler scheduler = FairBatchScheduler.create(executor, 4, 10);
+            BatchingCallback<Integer> callback = scheduler.batchInto(1, item -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+            }, false, 1, 2);
+            for (int i = 0; i < 20; i++) {
+                callback.call(i);
+            }
+            callback.commit();
+
+            assertTrue(maxRunning.get() <= 2);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testBatchTimeoutExcludesQueueing() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            FairBatchScheduler scheduler = FairBatchScheduler.create(executor, 1, 1);
+            CallbackCollector<List<Integer>> out = new CallbackCollector<>();
+            BatchingCallback<Integer> callback = scheduler.batchInto(1, item -> {
+                Thread.sleep(30);
+                out.call(item);
+            }, false, 1, 10, Duration.ofMillis(100));
+            for (int i = 0; i < 10; i++) {
+                callback.call(i);
+            }
+            // Each batch waits up to 300ms for its turn, but only runs for 30ms
+            callback.commit();
+
+            assertEquals(10, out.getItems().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestGroupCommitCallback
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentSubmittersShareBatches() throws Exception
+    {
+        CallbackCollector<List<Integer>> out = new CallbackCollector<>();
+        GroupCommitCallback<Integer> writer = GroupCommitCallback.batchInto(10, Duration.ofMillis(5), 2, executor, out);
+
+        ExecutorService submitters = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<CompletableFuture<Void>>> submitted = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final int item = i;
+                submitted.add(CompletableFuture.supplyAsync(() -> writer.submit(item), submitters));
+            }
+            for (CompletableFuture<CompletableFuture<Void>> f : submitted) {
+                f.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            submitters.shutdownNow();
+        }
+
+        int total = 0;
+        for (List<Integer> batch : out.getItems()) {
+            assertTrue(batch.size() <= 10);
+            total += batch.size();
+        }
+        assertEquals(200, total);
+        assertTrue(out.getItems().size() < 200);
+    }
+
+    @Test
+    public void testLingerCompletesLoneItem() throws Exception
+    {
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        GroupCommitCallback<String> writer = GroupCommitCallback.batchInto(100, Duration.ofMillis(5), 1, executor, out);
+        writer.submit("a").get(5, TimeUnit.SECONDS);
+        assertEquals(1, out.getItems().size());
+    }
+
+    @Test
+    public void testFailureCompletesExceptionally() throws Exception
+    {
+        Exception boom = new Exception();
+        GroupCommitCallback<String> writer = GroupCommitCallback.batchInto(2, Duration.ofSeconds(10), 1, executor, items -> {
+            throw boom;
+        });
+        CompletableFuture<Void> a = writer.submit("a");
+        CompletableFuture<Void> b = writer.submit("b");
+        for (CompletableFuture<Void> f : List.of(a, b)) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(boom, e.getCause());
+            }
+        }
+        try {
+            writer.commit();
+            fail();
+        } catch (BatchingCallbackExecutionException e) {
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void testErrorCompletesExceptionally() throws Exception
+    {
+        AssertionError boom = new AssertionError("boom");
+        GroupCommitCallback<String> writer = GroupCommitCallback.batchInto(2, Duration.ofSeconds(10), 1, executor, items -> {
+            throw boom;
+        });
+        CompletableFuture<Void> a = writer.submit("a");
+        CompletableFuture<Void> b = writer.submit("b");
+        for (CompletableFuture<Void> f : List.of(a, b)) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(boom, e.getCause());
+            }
+        }
+        try {
+            writer.commit();
+            fail();
+        } catch (BatchingCallbackExecutionException e) {
+            assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void testRefusal() throws Exception
+    {
+        GroupCommitCallback<String> writer = GroupCommitCallback.batchInto(1, Duration.ofSeconds(10), 1, executor, items -> {
+            throw new CallbackRefusedException();
+        });
+        try {
+            writer.submit("a").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CallbackRefusedException);
+        }
+        try {
+            writer.submit("b").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CallbackRefusedException);
+        }
+        assertFalse(writer.commit());
+    }
+
+    @Test
+    public void testRejectedBatchCompletesExceptionally() throws Exception
+    {
+        ExecutorService dead = Executors.newSingleThreadExecutor();
+        dead.shutdown();
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        GroupCommitCallback<String> writer = GroupCommitCallback.batchInto(2, Duration.ofSeconds(10), 1, dead, out);
+        CompletableFuture<Void> a = writer.submit("a");
+        CompletableFuture<Void> b = writer.submit("b");
+        for (CompletableFuture<Void> f : List.of(a, b)) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        try {
+            writer.commit();
+            fail();
+        } catch (BatchingCallbackExecutionException e) {
+            assertEquals(1, e.getSuppressed().length);
+        }
+        assertTrue(out.getItems().isEmpty());
+    }
+}
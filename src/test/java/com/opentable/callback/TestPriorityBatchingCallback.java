@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.callback;
+
+import static com.google.common.collect.ImmutableList.of;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Test;
+
+import com.opentable.callback.PriorityBatchingCallback.Lane;
+
+public class TestPriorityBatchingCallback
+{
+    private final ExecutorService directExecutor = MoreExecutors.newDirectExecutorService();
+
+    @Test
+    public void testLanesBatchIndependently() throws Exception
+    {
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        try (PriorityBatchingCallback<String> batcher = PriorityBatchingCallback.batchInto(
+                of(Lane.of(1, Duration.ZERO), Lane.of(3, Duration.ZERO)),
+                s -> s.startsWith("!") ? 0 : 1, 1, 0, directExecutor, out)) {
+            Callbacks.stream(batcher, "a", "b", "!x", "c", "d", "e");
+        }
+        assertEquals(of(of("!x"), of("a", "b", "c"), of("d", "e")), out.getItems());
+    }
+
+    @Test
+    public void testLingerFlushesPartialBatch() throws Exception
+    {
+        CountDownLatch flushed = new CountDownLatch(1);
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        PriorityBatchingCallback<String> batcher = PriorityBatchingCallback.batchInto(
+                of(Lane.of(100, Duration.ofMillis(20))), s -> 0, 1, 0, directExecutor,
+                Callbacks.chain(out, item -> flushed.countDown()));
+
+        batcher.call("a");
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(of(of("a")), out.getItems());
+        batcher.close();
+    }
+
+    @Test
+    public void testUrgentLaneFlushesFirst() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        CallbackCollector<List<String>> out = new CallbackCollector<>();
+        try {
+            PriorityBatchingCallback<String> batcher = PriorityBatchingCallback.batchInto(
+                    of(Lane.of(1, Duration.ZERO), Lane.of(1, Duration.ZERO)),
+                    s -> s.startsWith("!") ? 0 : 1, 1, 0, executor, item -> {
+                        release.await();
+                        out.call(item);
+                    });
+            batcher.call("a");
+            batcher.call("b");
+            batcher.call("!x");
+            release.countDown();
+            batcher.commit();
+
+            assertEquals(of(of("a"), of("!x"), of("b")), out.getItems());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReservedSlotsBypassStuckBulk() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch urgentDone = new CountDownLatch(1);
+        try {
+            PriorityBatchingCallback<String> batcher = PriorityBatchingCallback.batchInto(
+                    of(Lane.of(1, Duration.ZERO), Lane.of(1, Duration.ZERO)),
+                    s -> s.startsWith("!") ? 0 : 1, 2, 1, executor, item -> {
+                        if (item.get(0).startsWith("!")) {
+                            urgentDone.countDown();
+                        } else {
+                            release.await();
+                        }
+                    });
+            batcher.call("a");
+            batcher.call("b");
+            batcher.call("!x");
+            assertTrue(urgentDone.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            batcher.commit();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailuresThrownOnCommit() throws Exception
+    {
+        Exception boom = new Exception();
+        PriorityBatchingCallback<String> batcher = PriorityBatchingCallback.batchInto(
+                of(Lane.of(2, Duration.ZERO)), s -> 0, 1, 0, directExecutor, item -> {
+                    throw boom;
+                });
+        batcher.call("a");
+        try {
+            batcher.commit();
+            fail();
+        } catch (BatchingCallbackExecutionException bcee) {
+            assertEquals(1, bcee.getSuppressed().length);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testErrorReleasesSlot() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AssertionError boom = new AssertionError("boom");
+        AtomicInteger written = new AtomicInteger();
+        try {
+            PriorityBatchingCallback<String> batcher = PriorityBatchingCallback.batchInto(
+                    of(Lane.of(1, Duration.ZERO)), s -> 0, 1, 0, executor, items -> {
+                        if (items.contains("bad")) {
+                            throw boom;
+                        }
+                        written.addAndGet(items.size());
+                    });
+            batcher.call("bad");
+            try {
+                batcher.commit();
+                fail();
+            } catch (BatchingCallbackExecutionException bcee) {
+                assertEquals(1, bcee.getSuppressed().length);
+                assertSame(boom, bcee.getSuppressed()[0]);
+            }
+            batcher.call("good");
+            try {
+                batcher.commit();
+                fail();
+            } catch (BatchingCallbackExecutionException expected) {
+                // failures are kept until the batcher is discarded
+            }
+            assertEquals(1, written.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestAsyncIO
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    private String slow(Integer millis) throws IOException
+    {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(millis);
+            return "slept " + millis;
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw new InterruptedIOException();
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testApply() throws Exception
+    {
+        try (AsyncIO io = AsyncIO.create(2)) {
+            assertEquals("slept 1", io.apply(this::slow, 1).get());
+            try {
+                io.apply(x -> {
+                    throw new IOException("failed " + x);
+                }, 7).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("failed 7", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testMaxConcurrency() throws Exception
+    {
+        final AsyncIO io = AsyncIO.using(executor, 2);
+        final List<CompletableFuture<String>> calls = IntStream.range(0, 8)
+                .mapToObj(i -> io.apply(this::slow, 20))
+                .collect(Collectors.toList());
+        for (CompletableFuture<String> call : calls) {
+            assertEquals("slept 20", call.get());
+        }
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void testTimeoutInterrupts() throws Exception
+    {
+        final AsyncIO io = AsyncIO.using(executor, 2);
+        try {
+            io.apply(this::slow, 60_000, Duration.ofMillis(20)).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("slept 1", io.apply(this::slow, 1, Duration.ofSeconds(5)).get());
+    }
+
+    @Test(timeout = 10_000)
+    public void testCancelInterrupts() throws Exception
+    {
+        final AsyncIO io = AsyncIO.using(executor, 2);
+        final CompletableFuture<String> call = io.apply(this::slow, 60_000);
+        while (running.get() == 0) {
+            Thread.sleep(1);
+        }
+        call.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void testApplyAll() throws Exception
+    {
+        final AsyncIO io = AsyncIO.using(executor, 10);
+        final List<Integer> inputs = IntStream.range(0, 20).map(i -> 20 - i).boxed().collect(Collectors.toList());
+        final List<String> results = io.applyAll(this::slow, inputs, 3, null).get();
+        assertEquals(inputs.stream().map(i -> "slept " + i).collect(Collectors.toList()), results);
+        assertEquals(3, maxRunning.get());
+        assertEquals(Collections.emptyList(), io.applyAll(this::slow, Collections.emptyList(), 3, null).get());
+    }
+
+    @Test(timeout = 10_000)
+    public void testApplyAllFailureCancelsOthers() throws Exception
+    {
+        final AsyncIO io = AsyncIO.using(executor, 10);
+        final AtomicInteger started = new AtomicInteger();
+        try {
+            io.applyAll(x -> {
+                started.incrementAndGet();
+                if (x == 0) {
+                    slow(20);
+                    throw new IOException("failed");
+                }
+                return slow(60_000);
+            }, List.of(1, 0, 2, 3, 4, 5), 2, null).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("failed", e.getCause().getMessage());
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(2, started.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void testCancelApplyAll() throws Exception
+    {
+        final AsyncIO io = AsyncIO.using(executor, 10);
+        final CompletableFuture<List<String>> all = io.applyAll(this::slow, List.of(60_000, 60_000), 2, null);
+        while (running.get() == 0) {
+            Thread.sleep(1);
+        }
+        all.cancel(true);
+        try {
+            all.get();
+            fail();
+        } catch (CancellationException e) {
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
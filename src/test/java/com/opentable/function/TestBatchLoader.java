@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.opentable.callback.BatchingCallbackExecutionException;
+
+public class TestBatchLoader
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final List<List<Integer>> bulkCalls = new CopyOnWriteArrayList<>();
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    private Map<Integer, String> bulk(Collection<Integer> keys)
+    {
+        bulkCalls.add(new ArrayList<>(keys));
+        Map<Integer, String> values = new HashMap<>();
+        for (Integer key : keys) {
+            // Odd keys have no value
+            if (key % 2 == 0) {
+                values.put(key, "v" + key);
+            }
+        }
+        return values;
+    }
+
+    @Test(timeout = 10_000)
+    public void testConcurrentLookupsShareBulkCalls() throws Exception
+    {
+        BatchLoader<Integer, String> loader = BatchLoader.of(10, Duration.ofMillis(5), 2, executor, this::bulk);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final int key = i;
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return loader.apply(key);
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    }
+                }, callers));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i % 2 == 0 ? "v" + i : null, results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertTrue(bulkCalls.toString(), bulkCalls.size() < 100);
+        assertEquals(100, bulkCalls.stream().mapToInt(List::size).sum());
+        assertTrue(bulkCalls.stream().allMatch(keys -> keys.size() <= 10));
+    }
+
+    @Test(timeout = 10_000)
+    public void testLoadAllBatchesBySize() throws Exception
+    {
+        BatchLoader<Integer, String> loader = BatchLoader.of(10, Duration.ofSeconds(10), 2, executor, this::bulk);
+        CompletableFuture<Map<Integer, String>> values = loader.loadAll(IntStream.range(0, 25).boxed().collect(Collectors.toList()));
+        loader.flush();
+        Map<Integer, String> result = values.get(5, TimeUnit.SECONDS);
+        assertEquals(13, result.size());
+        assertEquals("v24", result.get(24));
+        assertNull(result.get(3));
+        assertEquals(3, bulkCalls.size());
+    }
+
+    @Test(timeout = 10_000)
+    public void testDuplicateKeysLoadOnce() throws Exception
+    {
+        try (BatchLoader<Integer, String> loader = BatchLoader.of(10, Duration.ofSeconds(10), 2, executor, this::bulk)) {
+            CompletableFuture<String> first = loader.load(4);
+            CompletableFuture<String> second = loader.load(4);
+            loader.flush();
+            assertEquals("v4", first.get());
+            assertEquals("v4", second.get());
+        }
+        assertEquals(List.of(List.of(4)), bulkCalls);
+    }
+
+    @Test(timeout = 10_000)
+    public void testFailedBatchFailsItsKeysOnly() throws Exception
+    {
+        BatchLoader<Integer, String> loader = BatchLoader.of(2, Duration.ofMillis(5), 1, executor, keys -> {
+            if (keys.contains(13)) {
+                throw new IOException("no 13");
+            }
+            return bulk(keys);
+        });
+        CompletableFuture<String> unlucky = loader.load(12);
+        CompletableFuture<String> thirteen = loader.load(13);
+        try {
+            thirteen.join();
+            fail();
+        } catch (Exception e) {
+            assertEquals("no 13", e.getCause().getMessage());
+        }
+        assertTrue(unlucky.isCompletedExceptionally());
+        try {
+            loader.apply(13);
+            fail();
+        } catch (IOException e) {
+            assertEquals("no 13", e.getMessage());
+        }
+        assertEquals("v14", loader.apply(14));
+        try {
+            loader.flush();
+            fail();
+        } catch (BatchingCallbackExecutionException e) {
+            assertEquals(2, e.getSuppressed().length);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testRejectedBatchFailsItsKeys() throws Exception
+    {
+        ExecutorService dead = Executors.newSingleThreadExecutor();
+        dead.shutdown();
+        BatchLoader<Integer, String> loader = BatchLoader.of(10, Duration.ofMillis(5), 1, dead, this::bulk);
+        try {
+            loader.load(1).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        try {
+            loader.apply(2);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        try {
+            loader.flush();
+            fail();
+        } catch (BatchingCallbackExecutionException e) {
+            assertEquals(2, e.getSuppressed().length);
+        }
+        assertTrue(bulkCalls.isEmpty());
+    }
+
+    @Test(timeout = 10_000)
+    public void testBulkErrorFailsKeysAndFlush() throws Exception
+    {
+        AssertionError boom = new AssertionError("boom");
+        BatchLoader<Integer, String> loader = BatchLoader.of(10, Duration.ofSeconds(10), 1, executor, keys -> {
+            if (keys.contains(13)) {
+                throw boom;
+            }
+            return bulk(keys);
+        });
+        CompletableFuture<String> thirteen = loader.load(13);
+        try {
+            loader.close();
+            fail();
+        } catch (BatchingCallbackExecutionException e) {
+            assertEquals(1, e.getSuppressed().length);
+            assertSame(boom, e.getSuppressed()[0].getCause());
+        }
+        try {
+            thirteen.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(boom, e.getCause());
+        }
+        CompletableFuture<String> fourteen = loader.load(14);
+        try {
+            loader.flush();
+            fail();
+        } catch (BatchingCallbackExecutionException expected) {
+            // the earlier failure is still reported
+        }
+        assertEquals("v14", fourteen.get(5, TimeUnit.SECONDS));
+    }
+}
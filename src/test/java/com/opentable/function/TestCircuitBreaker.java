@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.opentable.function.CircuitBreaker.State;
+
+public class TestCircuitBreaker
+{
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean healthy = new AtomicBoolean(true);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicLong callNanos = new AtomicLong();
+
+    private final IOFunction<String, String> remote = in -> {
+        calls.incrementAndGet();
+        clock.addAndGet(callNanos.get());
+        if (!healthy.get()) {
+            throw new IOException("down");
+        }
+        return in.toUpperCase();
+    };
+
+    @Test
+    public void testOpensOnFailureRateAndRecovers() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(10, 0.5, Duration.ofSeconds(5)).withHalfOpenCalls(2).withClock(clock::get);
+        IOFunction<String, String> function = breaker.decorateIO(remote);
+
+        // Four failures in ten calls stay below the threshold
+        for (int i = 0; i < 10; i++) {
+            healthy.set(i % 5 != 0 && i % 5 != 1);
+            call(function);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0.4, breaker.getFailureRate(), 1e-9);
+
+        // The next two failures replace failures as the window slides; the third tips it
+        healthy.set(false);
+        call(function);
+        call(function);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(function);
+        assertEquals(State.OPEN, breaker.getState());
+
+        calls.set(0);
+        assertRefused(function);
+        assertEquals(0, calls.get());
+        assertEquals(1, breaker.getRejectedCount());
+
+        // After the open duration a trial failure opens it again
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+        call(function);
+        assertEquals(State.OPEN, breaker.getState());
+        assertRefused(function);
+
+        // Two successful trials close it with an empty window
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+        healthy.set(true);
+        assertEquals("A", function.apply("a"));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertEquals("B", function.apply("b"));
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 0);
+    }
+
+    @Test
+    public void testHalfOpenLimitsTrialCalls() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(2, 1, Duration.ofSeconds(1)).withHalfOpenCalls(1).withClock(clock::get);
+        AtomicInteger nested = new AtomicInteger();
+        AtomicReference<ThrowingFunction<String, String>> function = new AtomicReference<>();
+        function.set(breaker.decorate(in -> {
+            if (in.equals("fail")) {
+                throw new IOException("down");
+            }
+            // While the first trial is in flight, a second caller is refused
+            if (nested.getAndIncrement() == 0) {
+                try {
+                    function.get().apply("nested");
+                    fail();
+                } catch (CircuitOpenException expected) {
+                    // ok
+                }
+            }
+            return in;
+        }));
+        callThrowing(function.get(), "fail");
+        callThrowing(function.get(), "fail");
+        assertEquals(State.OPEN, breaker.getState());
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals("ok", function.get().apply("ok"));
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHungTrialDoesNotBlockForever() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(2, 1, Duration.ofSeconds(1)).withHalfOpenCalls(1).withClock(clock::get);
+        AtomicReference<ThrowingFunction<String, String>> function = new AtomicReference<>();
+        function.set(breaker.decorate(in -> {
+            if (in.equals("fail")) {
+                throw new IOException("down");
+            }
+            if (in.equals("hang")) {
+                // Still running a whole open duration later, so new trials are let through
+                clock.addAndGet(Duration.ofSeconds(1).toNanos());
+                assertEquals("ok", function.get().apply("ok"));
+                assertEquals(State.CLOSED, breaker.getState());
+            }
+            return in;
+        }));
+        callThrowing(function.get(), "fail");
+        callThrowing(function.get(), "fail");
+        assertEquals(State.OPEN, breaker.getState());
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals("hang", function.get().apply("hang"));
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testStragglerDoesNotExtendOpenDuration() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(3, 0.6, Duration.ofSeconds(1)).withMinimumCalls(2).withHalfOpenCalls(1)
+                .withClock(clock::get);
+        AtomicReference<ThrowingFunction<String, String>> function = new AtomicReference<>();
+        function.set(breaker.decorate(in -> {
+            if (in.equals("straggler")) {
+                // Admitted while closed, and times out after the breaker opened
+                callThrowing(function.get(), "fail");
+                callThrowing(function.get(), "fail");
+                assertEquals(State.OPEN, breaker.getState());
+                clock.addAndGet(Duration.ofMillis(500).toNanos());
+                throw new IOException("timed out");
+            }
+            if (in.equals("fail")) {
+                throw new IOException("down");
+            }
+            return in;
+        }));
+        callThrowing(function.get(), "straggler");
+        assertEquals(State.OPEN, breaker.getState());
+        clock.addAndGet(Duration.ofMillis(500).toNanos());
+        assertEquals("ok", function.get().apply("ok"));
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(4, 1, Duration.ofSeconds(5))
+                .withSlowCalls(Duration.ofMillis(100), 0.75)
+                .withClock(clock::get);
+        IOFunction<String, String> function = breaker.decorateIO(remote);
+        callNanos.set(Duration.ofMillis(100).toNanos());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("A", function.apply("a"));
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getSlowCallRate(), 0);
+        function.apply("a");
+        assertEquals(State.OPEN, breaker.getState());
+        assertRefused(function);
+    }
+
+    @Test
+    public void testSuccessesSlideFailuresOut() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(4, 0.5, Duration.ofSeconds(5)).withClock(clock::get);
+        IOFunction<String, String> function = breaker.decorateIO(remote);
+        healthy.set(false);
+        call(function);
+        healthy.set(true);
+        for (int i = 0; i < 4; i++) {
+            call(function);
+        }
+        assertEquals(0, breaker.getFailureRate(), 0);
+        healthy.set(false);
+        call(function);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(function);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testFailurePredicate() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreaker.of(2, 0.5, Duration.ofSeconds(5))
+                .withFailurePredicate(e -> !(e instanceof FileNotFoundException))
+                .withClock(clock::get);
+        IOFunction<String, String> function = breaker.decorateIO(in -> {
+            throw new FileNotFoundException(in);
+        });
+        for (int i = 0; i < 10; i++) {
+            try {
+                function.apply("missing");
+                fail();
+            } catch (FileNotFoundException expected) {
+                // ok
+            }
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    private static void call(IOFunction<String, String> function)
+    {
+        try {
+            function.apply("x");
+        } catch (IOException e) {
+            // expected for unhealthy calls
+        }
+    }
+
+    private static void callThrowing(ThrowingFunction<String, String> function, String in)
+    {
+        try {
+            function.apply(in);
+        } catch (Exception e) {
+            // expected
+        }
+    }
+
+    private static void assertRefused(IOFunction<String, String> function) throws IOException
+    {
+        try {
+            function.apply("x");
+            fail();
+        } catch (CircuitOpenException expected) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestHedging
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10_000)
+    public void testHedgeWinsAndLoserIsCancelled() throws Exception
+    {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Hedging hedging = Hedging.fixedDelay(Duration.ofMillis(10), 1, executor);
+        ThrowingFunction<String, String> function = hedging.decorate(in -> {
+            if (attempts.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "slow";
+            }
+            return "fast";
+        });
+        assertEquals("fast", function.apply("x"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, hedging.getCallCount());
+        assertEquals(1, hedging.getHedgeCount());
+        assertEquals(1, hedging.getHedgeWinCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void testFastCallsAreNotHedged() throws Exception
+    {
+        Hedging hedging = Hedging.fixedDelay(Duration.ofSeconds(5), 1, executor);
+        ThrowingFunction<Integer, Integer> function = hedging.decorate(in -> {
+            attempts.incrementAndGet();
+            return in + 1;
+        });
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i + 1), function.apply(i));
+        }
+        assertEquals(100, attempts.get());
+        assertEquals(0, hedging.getHedgeCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void testBudgetCapsHedges() throws Exception
+    {
+        Hedging hedging = Hedging.fixedDelay(Duration.ZERO, 0.25, executor);
+        ThrowingFunction<String, String> function = hedging.decorate(in -> {
+            attempts.incrementAndGet();
+            Thread.sleep(5);
+            return in;
+        });
+        for (int i = 0; i < 40; i++) {
+            assertEquals("x", function.apply("x"));
+        }
+        assertEquals(10, hedging.getHedgeCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void testFirstFailureBeforeDelayIsNotHedged() throws Exception
+    {
+        Hedging hedging = Hedging.fixedDelay(Duration.ofSeconds(5), 1, executor);
+        ThrowingFunction<String, String> function = hedging.decorate(in -> {
+            attempts.incrementAndGet();
+            throw new IOException(in);
+        });
+        try {
+            function.apply("boom");
+            fail();
+        } catch (IOException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void testBothAttemptsFail() throws Exception
+    {
+        Hedging hedging = Hedging.fixedDelay(Duration.ofMillis(10), 1, executor);
+        ThrowingFunction<String, String> function = hedging.decorate(in -> {
+            if (attempts.getAndIncrement() == 0) {
+                Thread.sleep(100);
+                throw new IOException("primary");
+            }
+            throw new IOException("hedge");
+        });
+        try {
+            function.apply("x");
+            fail();
+        } catch (IOException e) {
+            assertEquals("hedge", e.getMessage());
+            assertEquals(1, e.getSuppressed().length);
+            assertEquals("primary", e.getSuppressed()[0].getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testPercentileDelayFollowsLatency() throws Exception
+    {
+        Hedging hedging = Hedging.percentileDelay(90, Duration.ofSeconds(1), 0.05, executor);
+        ThrowingFunction<String, String> function = hedging.decorate(in -> in);
+        for (int i = 0; i < 300; i++) {
+            function.apply("x");
+        }
+        assertTrue(hedging.getDelay().toString(), hedging.getDelay().compareTo(Duration.ofMillis(100)) < 0);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.opentable.util.Optionals.MapAdapter;
+
+public class TestSingleFlight
+{
+    private static final int THREADS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneResult() throws Exception
+    {
+        SingleFlight<String, Object> flight = SingleFlight.of(key -> {
+            calls.incrementAndGet();
+            release.await();
+            return new Object();
+        });
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> flight.apply("k")));
+        }
+        awaitCallers(flight);
+        release.countDown();
+        Object first = results.get(0).get();
+        for (Future<Object> result : results) {
+            assertSame(first, result.get());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.inFlight());
+
+        // Finished calls are not remembered
+        flight.apply("k");
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testDistinctKeysDoNotShare() throws Exception
+    {
+        SingleFlight<Integer, Integer> flight = SingleFlight.of(key -> {
+            calls.incrementAndGet();
+            return key * 2;
+        });
+        assertEquals(Integer.valueOf(2), flight.apply(1));
+        assertEquals(Integer.valueOf(4), flight.apply(2));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneException() throws Exception
+    {
+        IOException failure = new IOException("backend down");
+        IOFunction<String, String> flight = SingleFlight.ofIO(key -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            throw failure;
+        });
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> flight.apply("k")));
+        }
+        while (calls.get() == 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Future<String> result : results) {
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void testMapAdapter() throws Exception
+    {
+        MapAdapter<String, Integer> adapter = SingleFlight.mapAdapter(key -> {
+            calls.incrementAndGet();
+            return key.isEmpty() ? Optional.empty() : Optional.of(key.length());
+        });
+        assertEquals(Optional.of(3), adapter.getOpt("abc"));
+        assertEquals(Optional.empty(), adapter.getOpt(""));
+        try {
+            SingleFlight.<String, Integer>mapAdapter(key -> {
+                throw new IllegalStateException("bad key " + key);
+            }).getOpt("x");
+            fail();
+        } catch (IllegalStateException expected) {
+            assertEquals("bad key x", expected.getMessage());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testReentrantCallDoesNotWaitForItself() throws Exception
+    {
+        AtomicReference<SingleFlight<Integer, Integer>> flight = new AtomicReference<>();
+        flight.set(SingleFlight.of(n -> {
+            // Asks again for the same key once, as a cache loader might through the cache
+            return calls.incrementAndGet() == 1 ? flight.get().apply(n) + 1 : n;
+        }));
+        assertEquals(Integer.valueOf(8), flight.get().apply(7));
+        assertEquals(0, flight.get().inFlight());
+    }
+
+    @Test(timeout = 10_000)
+    public void testMapAdapterFollowerCanBeInterrupted() throws Exception
+    {
+        MapAdapter<String, String> adapter = SingleFlight.mapAdapter(key -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(key);
+        });
+        Future<?> leader = executor.submit(() -> adapter.getOpt("k"));
+        while (calls.get() == 0) {
+            Thread.sleep(1);
+        }
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean stillInterrupted = new AtomicBoolean();
+        Thread follower = new Thread(() -> {
+            try {
+                adapter.getOpt("k");
+            } catch (IllegalStateException e) {
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+                failure.set(e);
+            }
+        });
+        follower.start();
+        Thread.sleep(50);
+        follower.interrupt();
+        follower.join(5_000);
+        assertTrue(failure.get() instanceof IllegalStateException);
+        assertTrue(failure.get().getCause() instanceof InterruptedException);
+        assertTrue(stillInterrupted.get());
+        release.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitCallers(SingleFlight<?, ?> flight) throws InterruptedException
+    {
+        // The leader is in the function; give the others time to find its call in flight
+        while (calls.get() == 0 || flight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+    }
+}
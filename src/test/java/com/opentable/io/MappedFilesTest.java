@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.opentable.callback.CallbackRefusedException;
+
+public class MappedFilesTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void shutdown()
+    {
+        pool.shutdownNow();
+    }
+
+    private Path write(String contents) throws IOException
+    {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String decode(ByteBuffer chunk)
+    {
+        return StandardCharsets.UTF_8.decode(chunk).toString();
+    }
+
+    @Test
+    public void testChunksAreWholeRecordsInOrder() throws Exception
+    {
+        final StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            contents.append("record ").append(i).append('\n');
+        }
+        contents.append("no trailing newline");
+        final Path file = write(contents.toString());
+
+        final List<String> chunks = new ArrayList<>();
+        final long count = MappedFiles.processChunks(file, (byte) '\n', 100, pool, MappedFilesTest::decode, chunks::add);
+
+        assertEquals(chunks.size(), count);
+        assertTrue(chunks.size() > 50);
+        assertEquals(contents.toString(), String.join("", chunks));
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            assertTrue(chunks.get(i), chunks.get(i).length() >= 100 && chunks.get(i).endsWith("\n"));
+        }
+    }
+
+    @Test
+    public void testCustomDelimiterAndLongRecord() throws Exception
+    {
+        final String longRecord = new String(new char[500]).replace('\0', 'x') + ';';
+        final Path file = write("a;b;" + longRecord + "c;");
+
+        final List<String> chunks = new ArrayList<>();
+        MappedFiles.processChunks(file, (byte) ';', 3, pool, MappedFilesTest::decode, chunks::add);
+
+        assertEquals(List.of("a;b;", longRecord, "c;"), chunks);
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception
+    {
+        final List<Object> chunks = new ArrayList<>();
+        assertEquals(0, MappedFiles.processChunks(write(""), chunk -> chunk, chunks::add));
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    public void testNullResultsAreSkipped() throws Exception
+    {
+        final List<String> chunks = new ArrayList<>();
+        final long count = MappedFiles.processChunks(write("keep\ndrop\nkeep\n"), (byte) '\n', 1, pool,
+                chunk -> decode(chunk.duplicate()).startsWith("drop") ? null : decode(chunk), chunks::add);
+        assertEquals(3, count);
+        assertEquals(List.of("keep\n", "keep\n"), chunks);
+    }
+
+    @Test
+    public void testFunctionExceptionIsRethrown() throws Exception
+    {
+        final Path file = write("ok\nbad\nok\n");
+        try {
+            MappedFiles.processChunks(file, (byte) '\n', 1, pool, chunk -> {
+                if (decode(chunk).startsWith("bad")) {
+                    throw new IOException("bad chunk");
+                }
+                return chunk;
+            }, chunk -> { });
+            fail();
+        } catch (IOException e) {
+            assertEquals("bad chunk", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCallbackRefusalStops() throws Exception
+    {
+        final Path file = write("1\n2\n3\n4\n5\n6\n7\n8\n9\n");
+        final List<String> chunks = new ArrayList<>();
+        final long count = MappedFiles.processChunks(file, (byte) '\n', 1, pool, MappedFilesTest::decode, chunk -> {
+            if (chunk.startsWith("3")) {
+                throw new CallbackRefusedException();
+            }
+            chunks.add(chunk);
+        });
+        assertEquals(3, count);
+        assertEquals(List.of("1\n", "2\n"), chunks);
+    }
+}
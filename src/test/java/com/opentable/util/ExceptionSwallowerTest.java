@@ -15,6 +15,13 @@ package com.opentable.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import org.junit.Test;
 
@@ -38,4 +45,62 @@ public class ExceptionSwallowerTest {
     public void testFunctionFail() {
         assertNull(ExceptionSwallower.forFunction(f -> { throw new RuntimeException("wat"); }).apply(3));
     }
+
+    @Test
+    public void testAggregating() {
+        AtomicLong clock = new AtomicLong();
+        ExceptionSwallower.Aggregating swallower = new ExceptionSwallower.Aggregating(Duration.ofSeconds(10), clock::get);
+        Function<Integer, String> function = swallower.forFunction(ExceptionSwallowerTest::fail);
+        for (int i = 0; i < 100; i++) {
+            assertNull(function.apply(i % 2));
+        }
+        swallower.swallowExceptions(() -> { throw new IllegalStateException("wat"); }).run();
+        assertEquals(101, swallower.getSwallowedCount());
+
+        Map<String, Long> counts = swallower.getCounts();
+        assertEquals(3, counts.size());
+        assertTrue(counts.toString(), counts.entrySet().stream().anyMatch(e -> e.getKey().startsWith("java.io.IOException, first at") && e.getValue() == 50));
+
+        // The first of each type was logged in full; the rest are summarized once
+        String summary = swallower.summarize();
+        assertTrue(summary, summary.startsWith("Swallowed 98 exceptions since the last summary: 49 x "));
+        assertNull(swallower.summarize());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        function.apply(0);
+        assertNull(swallower.summarize());
+        assertEquals(102, swallower.getSwallowedCount());
+    }
+
+    @Test
+    public void testAggregatingReadsStackTraceOncePerType() {
+        ExceptionSwallower.Aggregating swallower = new ExceptionSwallower.Aggregating(Duration.ofSeconds(10), () -> 0);
+        Runnable runnable = swallower.swallowExceptions(() -> { throw new CountingException(); });
+        runnable.run();
+        long first = CountingException.STACK_TRACES.get();
+        for (int i = 0; i < 100; i++) {
+            runnable.run();
+        }
+        assertEquals(first, CountingException.STACK_TRACES.get());
+        assertEquals(101, swallower.getSwallowedCount());
+        assertEquals(1, swallower.getCounts().size());
+    }
+
+    private static final class CountingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final AtomicLong STACK_TRACES = new AtomicLong();
+
+        @Override
+        public StackTraceElement[] getStackTrace() {
+            STACK_TRACES.incrementAndGet();
+            return super.getStackTrace();
+        }
+    }
+
+    private static String fail(int kind) throws IOException {
+        if (kind == 0) {
+            throw new IOException("wat");
+        }
+        throw new UnsupportedOperationException("wat");
+    }
 }
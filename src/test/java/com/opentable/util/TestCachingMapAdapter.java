@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.opentable.util.Optionals.MapAdapter;
+
+public class TestCachingMapAdapter
+{
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<String, Integer> backend = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final MapAdapter<String, Integer> loader = key -> {
+        loads.incrementAndGet();
+        return Optional.ofNullable(backend.get(key));
+    };
+
+    @Test
+    public void testHitsAndMisses() throws Exception
+    {
+        backend.put("a", 1);
+        CachingMapAdapter<String, Integer> cache = new CachingMapAdapter<>(loader, 10, Duration.ofSeconds(10), Duration.ofSeconds(1), clock::get);
+        assertEquals(Optional.of(1), cache.getOpt("a"));
+        backend.put("a", 2);
+        assertEquals(Optional.of(1), cache.getOpt("a"));
+        assertEquals(Optional.empty(), cache.getOpt("b"));
+        assertEquals(Optional.empty(), cache.getOpt("b"));
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+
+        cache.invalidate("a");
+        assertEquals(Optional.of(2), cache.getOpt("a"));
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        backend.put("a", 1);
+        CachingMapAdapter<String, Integer> cache = new CachingMapAdapter<>(loader, 10, Duration.ofSeconds(10), Duration.ofSeconds(1), clock::get);
+        cache.getOpt("a");
+        cache.getOpt("b");
+
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        backend.put("b", 3);
+        assertEquals(Optional.of(3), cache.getOpt("b"));
+        assertEquals(Optional.of(1), cache.getOpt("a"));
+
+        clock.addAndGet(Duration.ofSeconds(9).toNanos());
+        backend.put("a", 2);
+        assertEquals(Optional.of(2), cache.getOpt("a"));
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testNoNegativeCaching() throws Exception
+    {
+        CachingMapAdapter<String, Integer> cache = new CachingMapAdapter<>(loader, 10, Duration.ofSeconds(10), Duration.ZERO, clock::get);
+        cache.getOpt("a");
+        cache.getOpt("a");
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception
+    {
+        for (int i = 0; i < 4; i++) {
+            backend.put("k" + i, i);
+        }
+        CachingMapAdapter<String, Integer> cache = Optionals.cachingMapAdapter(loader, 3, Duration.ofDays(1), Duration.ofDays(1));
+        cache.getOpt("k0");
+        cache.getOpt("k1");
+        cache.getOpt("k2");
+        cache.getOpt("k0");
+        cache.getOpt("k3");
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        loads.set(0);
+        cache.getOpt("k0");
+        cache.getOpt("k2");
+        cache.getOpt("k3");
+        assertEquals(0, loads.get());
+        cache.getOpt("k1");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() throws Exception
+    {
+        AtomicReference<CachingMapAdapter<String, Integer>> cache = new AtomicReference<>();
+        cache.set(new CachingMapAdapter<>(key -> {
+            cache.get().invalidate(key);
+            return Optional.of(1);
+        }, 10, Duration.ofSeconds(10), Duration.ofSeconds(10), clock::get));
+        assertEquals(Optional.of(1), cache.get().getOpt("a"));
+        assertEquals(0, cache.get().size());
+    }
+
+    @Test
+    public void testInvalidatingOtherKeyDuringLoad() throws Exception
+    {
+        AtomicReference<CachingMapAdapter<String, Integer>> cache = new AtomicReference<>();
+        cache.set(new CachingMapAdapter<>(key -> {
+            cache.get().invalidate("other");
+            return Optional.of(1);
+        }, 10, Duration.ofSeconds(10), Duration.ofSeconds(10), clock::get));
+        assertEquals(Optional.of(1), cache.get().getOpt("a"));
+        assertEquals(1, cache.get().size());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception
+    {
+        CachingMapAdapter<String, Integer> cache = new CachingMapAdapter<>(key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("down");
+            }
+            return Optional.of(2);
+        }, 10, Duration.ofSeconds(10), Duration.ofSeconds(10), clock::get);
+        try {
+            cache.getOpt("a");
+            fail();
+        } catch (IllegalStateException expected) {
+            // ok
+        }
+        assertEquals(Optional.of(2), cache.getOpt("a"));
+        assertEquals(Optional.of(2), cache.getOpt("a"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroSize() throws Exception
+    {
+        Optionals.cachingMapAdapter(loader, 0, Duration.ofSeconds(1), Duration.ZERO);
+    }
+}
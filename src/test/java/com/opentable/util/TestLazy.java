@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TestLazy
+{
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void testLazyComputesOnce() throws Exception
+    {
+        Lazy<Object> lazy = Lazy.of(() -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+        assertFalse(lazy.isInitialized());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(lazy::get));
+            }
+            for (Future<Object> result : results) {
+                assertSame(lazy.get(), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertTrue(lazy.isInitialized());
+    }
+
+    @Test
+    public void testLazyNullAndFailure() throws Exception
+    {
+        Lazy<String> lazy = Lazy.of(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("first call fails");
+            }
+            return null;
+        });
+        try {
+            lazy.get();
+            fail();
+        } catch (IllegalStateException expected) {
+            assertFalse(lazy.isInitialized());
+        }
+        assertNull(lazy.get());
+        assertNull(lazy.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testUnlessWithLazy() throws Exception
+    {
+        Lazy<Integer> fallback = Lazy.of(calls::incrementAndGet);
+        assertEquals(Optional.of(1), Optionals.unless(Optional.empty(), fallback));
+        assertEquals(Optional.of(1), Optionals.unless(Optional.empty(), fallback));
+        assertEquals(Optional.of(5), Optionals.unless(Optional.of(5), fallback));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testExpiring() throws Exception
+    {
+        AtomicLong clock = new AtomicLong();
+        Expiring<Integer> expiring = new Expiring<>(calls::incrementAndGet, Duration.ofSeconds(10), null, clock::get);
+        assertEquals(Integer.valueOf(1), expiring.get());
+        clock.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertEquals(Integer.valueOf(1), expiring.get());
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(Integer.valueOf(2), expiring.get());
+        expiring.invalidate();
+        assertEquals(Integer.valueOf(3), expiring.get());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception
+    {
+        AtomicLong clock = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+        Expiring<Integer> expiring = new Expiring<>(() -> {
+            if (calls.incrementAndGet() == 3) {
+                throw new IllegalStateException("refresh fails");
+            }
+            return calls.get();
+        }, Duration.ofSeconds(10), refreshes::add, clock::get);
+        assertEquals(Integer.valueOf(1), expiring.get());
+
+        // Expired: readers keep the old value and only one refresh is started
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals(Integer.valueOf(1), expiring.get());
+        assertEquals(Integer.valueOf(1), expiring.get());
+        assertEquals(1, refreshes.size());
+        refreshes.remove(0).run();
+        assertEquals(Integer.valueOf(2), expiring.get());
+
+        // A failed refresh keeps the old value and lets a later read retry
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals(Integer.valueOf(2), expiring.get());
+        refreshes.remove(0).run();
+        assertEquals(Integer.valueOf(2), expiring.get());
+        refreshes.remove(0).run();
+        assertEquals(Integer.valueOf(4), expiring.get());
+        assertEquals(0, refreshes.size());
+    }
+
+    @Test
+    public void testStaleRefreshDoesNotOverwrite() throws Exception
+    {
+        AtomicLong clock = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+        Expiring<Integer> expiring = new Expiring<>(calls::incrementAndGet, Duration.ofSeconds(10), refreshes::add, clock::get);
+        assertEquals(Integer.valueOf(1), expiring.get());
+
+        // A refresh is started, then the value is invalidated and recomputed before the refresh finishes
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertEquals(Integer.valueOf(1), expiring.get());
+        expiring.invalidate();
+        assertEquals(Integer.valueOf(2), expiring.get());
+        refreshes.remove(0).run();
+        assertEquals(Integer.valueOf(2), expiring.get());
+    }
+}
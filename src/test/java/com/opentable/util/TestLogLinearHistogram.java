@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLogLinearHistogram
+{
+    @Test
+    public void testBucketBounds() throws Exception
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = LogLinearHistogram.bucketOf(value);
+            assertTrue(value <= LogLinearHistogram.highestValueIn(bucket));
+            assertTrue(bucket == 0 || value > LogLinearHistogram.highestValueIn(bucket - 1));
+        }
+        assertEquals(Long.MAX_VALUE, LogLinearHistogram.highestValueIn(LogLinearHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(10_000_000, snapshot.getMax());
+        assertEquals(5_000_500, snapshot.getMean(), 0.001);
+        assertEquals(5_000_000, snapshot.getValueAtPercentile(50), 5_000_000 * 0.04);
+        assertEquals(9_900_000, snapshot.getValueAtPercentile(99), 9_900_000 * 0.04);
+        assertEquals(10_000_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testReset() throws Exception
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(-5);
+        histogram.record(17);
+        assertEquals(2, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(50));
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.opentable.util.RateMeter.Snapshot;
+import com.opentable.util.RateMeter.Window;
+
+public class TestRateMeter
+{
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testSteadyRate() throws Exception
+    {
+        AtomicLong clock = new AtomicLong(1000);
+        RateMeter meter = new RateMeter(clock::get);
+        // 10 items of 100 bytes every 100ms
+        for (int i = 0; i < 200; i++) {
+            clock.addAndGet(100 * MS);
+            meter.mark(10, 1000);
+            if (i % 7 == 0) {
+                meter.snapshot();
+            }
+        }
+        Snapshot snapshot = meter.snapshot();
+        assertEquals(2000, snapshot.getItems());
+        assertEquals(200_000, snapshot.getBytes());
+        assertEquals(20, snapshot.getElapsed(TimeUnit.SECONDS));
+        assertEquals(100, snapshot.getMeanItemRate(), 1e-9);
+        assertEquals(10_000, snapshot.getMeanByteRate(), 1e-9);
+        for (Window window : Window.values()) {
+            assertEquals(100, snapshot.getItemRate(window), 1e-6);
+            assertEquals(10_000, snapshot.getByteRate(window), 1e-6);
+        }
+        assertEquals("items=2000 (100.0/s; 1s 100.0/s 5s 100.0/s 15s 100.0/s) "
+                + "bytes=195.3 KiB (9.8 KiB/s; 1s 9.8 KiB/s 5s 9.8 KiB/s 15s 9.8 KiB/s)", snapshot.toString());
+    }
+
+    @Test
+    public void testDecay() throws Exception
+    {
+        AtomicLong clock = new AtomicLong();
+        RateMeter meter = new RateMeter(clock::get);
+        clock.addAndGet(1000 * MS);
+        meter.mark(1000, 1_000_000);
+        meter.snapshot();
+
+        clock.addAndGet(1000 * MS);
+        Snapshot idle = meter.snapshot();
+        assertEquals(1000 * Math.exp(-1), idle.getItemRate(Window.ONE_SECOND), 1e-6);
+        assertEquals(1000 * Math.exp(-1 / 5.0), idle.getItemRate(Window.FIVE_SECONDS), 1e-6);
+        assertEquals(1_000_000 * Math.exp(-1 / 15.0), idle.getByteRate(Window.FIFTEEN_SECONDS), 1e-3);
+        assertEquals(500, idle.getMeanItemRate(), 1e-9);
+
+        // One snapshot after two idle seconds decays as much as two snapshots a second apart
+        clock.addAndGet(2000 * MS);
+        assertEquals(1000 * Math.exp(-3 / 5.0), meter.snapshot().getItemRate(Window.FIVE_SECONDS), 1e-6);
+    }
+
+    @Test
+    public void testSnapshotWithoutTimePassing() throws Exception
+    {
+        RateMeter meter = new RateMeter(() -> 42);
+        meter.mark(5);
+        Snapshot snapshot = meter.snapshot();
+        assertEquals(1, snapshot.getItems());
+        assertEquals(0, snapshot.getMeanItemRate(), 0);
+        assertEquals(0, snapshot.getByteRate(Window.ONE_SECOND), 0);
+    }
+
+    @Test
+    public void testConcurrentMarks() throws Exception
+    {
+        RateMeter meter = new RateMeter();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    meter.mark(3);
+                    if (i % 10_000 == 0) {
+                        meter.snapshot();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Snapshot snapshot = meter.snapshot();
+        assertEquals(400_000, snapshot.getItems());
+        assertEquals(1_200_000, snapshot.getBytes());
+    }
+}
@@ -14,7 +14,9 @@
 package com.opentable.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
@@ -33,6 +35,60 @@ public class TestSizes
         assertEquals("1.5 MiB", Sizes.formatSize((long) (1.5 * MB)));
 
         assertEquals("9.6 TiB", Sizes.formatSize((long) (9.6 * MB * MB)));
+
+        assertEquals("0 B", Sizes.formatSize(0));
+        assertEquals("1023 B", Sizes.formatSize(1023));
+        assertEquals("1.0 KiB", Sizes.formatSize(KB));
+        assertEquals("1024.0 KiB", Sizes.formatSize(MB - 1));
+        assertEquals("8.0 EiB", Sizes.formatSize(Long.MAX_VALUE));
+        assertEquals("size: 1.5 KiB", Sizes.formatSize(1536, new StringBuilder("size: ")).toString());
+    }
+
+    @Test
+    public void testSizesMatchFormatter() throws Exception
+    {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            final long count = random.nextLong() >>> (11 + random.nextInt(53));
+            assertEquals(Long.toString(count), formatWithFormatter(count), Sizes.formatSize(count));
+        }
+    }
+
+    @Test
+    public void testParse() throws Exception
+    {
+        assertEquals(512, Sizes.parseSize("512"));
+        assertEquals(512, Sizes.parseSize(" 512 B "));
+        assertEquals(1536, Sizes.parseSize("1.5 KiB"));
+        assertEquals(1500, Sizes.parseSize("1.5kB"));
+        assertEquals(2_000_000_000L, Sizes.parseSize("2 GB"));
+        assertEquals(2L * MB * KB, Sizes.parseSize("2 gib"));
+        assertEquals(Math.round(15.4 * MB), Sizes.parseSize("15.4 MiB"));
+        assertEquals(3_000_000, Sizes.parseSize("3M"));
+        assertEquals(500, Sizes.parseSize(".5 K"));
+        assertEquals(Long.MAX_VALUE, Sizes.parseSize("9223372036854775807"));
+
+        for (long count : new long[] { KB, MB, 5L * MB * MB, 123_456_789 }) {
+            assertEquals(count, Sizes.parseSize(Sizes.formatSize(count)), count / 20.0);
+        }
+
+        for (String bad : new String[] { "", " ", "MiB", ".", "1.2.3", "12 XB", "12 MiBs", "-5", "9 EiB", "99999999999999999999" }) {
+            try {
+                Sizes.parseSize(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // ok
+            }
+        }
+    }
+
+    private static String formatWithFormatter(long bytes)
+    {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        final int exp = (int) (Math.log(bytes) / Math.log(1024));
+        return String.format("%.1f %siB", bytes / Math.pow(1024, exp), "KMGTPE".charAt(exp - 1));
     }
 
     @Test
@@ -40,5 +96,7 @@ public class TestSizes
     {
         assertEquals("1.0 MiB/s", Sizes.formatRate(MB * 5, 5, TimeUnit.SECONDS));
         assertEquals("1.2 GiB/s", Sizes.formatRate((long) (1.2 * MB), 1, TimeUnit.MILLISECONDS));
+        assertEquals("1.9 MiB/s", Sizes.formatRate(1000, 500, TimeUnit.MICROSECONDS));
+        assertEquals("931.3 GiB/s", Sizes.formatRate(1000, 0, TimeUnit.SECONDS));
     }
 }
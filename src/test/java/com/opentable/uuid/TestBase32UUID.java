@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TestBase32UUID
+{
+    @Test
+    public void testRoundTripAndOrder()
+    {
+        Random random = new Random(19);
+        UUID prev = new UUID(0, 0);
+        String prevEncoded = Base32UUID.encode(prev);
+        assertEquals("00000000000000000000000000", prevEncoded);
+        assertEquals("7ZZZZZZZZZZZZZZZZZZZZZZZZZ", Base32UUID.encode(new UUID(-1, -1)));
+        for (int i = 0; i < 10_000; i++) {
+            UUID uuid = new UUID(random.nextLong() >>> random.nextInt(64), random.nextLong() >>> random.nextInt(64));
+            String encoded = Base32UUID.encode(uuid);
+            assertEquals(Base32UUID.LENGTH, encoded.length());
+            assertEquals(uuid, Base32UUID.decode(encoded));
+            assertEquals(uuid, Base32UUID.decode(encoded.toLowerCase()));
+            assertEquals(encoded, Base32UUID.appendTo(uuid, new StringBuilder()).toString());
+
+            byte[] buf = new byte[Base32UUID.LENGTH + 1];
+            Base32UUID.encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), buf, 1);
+            assertEquals(encoded, new String(buf, 1, Base32UUID.LENGTH, StandardCharsets.US_ASCII));
+            assertEquals(uuid, Base32UUID.decode(buf, 1));
+
+            assertEquals(Integer.signum(compareUnsigned(uuid, prev)), Integer.signum(encoded.compareTo(prevEncoded)));
+            prev = uuid;
+            prevEncoded = encoded;
+        }
+    }
+
+    @Test
+    public void testExample()
+    {
+        UUID uuid = UUID.fromString("12345678-9abc-11ef-9012-3456789abc12");
+        assertEquals("0J6HB7H6NW27QS04HMASW9NF0J", Base32UUID.encode(uuid));
+        assertEquals(uuid, Base32UUID.decode("oj6hb7h6nw27qs04hmasw9nfoj"));
+    }
+
+    @Test
+    public void testStrict()
+    {
+        for (String bad : new String[] {
+                "",
+                "0J6HB7H6NW27QS04HMASW9NF0",
+                "0J6HB7H6NW27QS04HMASW9NF0JJ",
+                "8ZZZZZZZZZZZZZZZZZZZZZZZZZ",
+                "0J6HB7H6NW27QS04HMASW9NF0U",
+                "0J6HB7H6NW27-S04HMASW9NF0J"}) {
+            try {
+                Base32UUID.decode(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    private static int compareUnsigned(UUID a, UUID b)
+    {
+        int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TestBase64UUID
+{
+    @Test
+    public void testMatchesJdkBase64()
+    {
+        Random random = new Random(17);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        for (int i = 0; i < 10_000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            String encoded = Base64UUID.encode(uuid);
+            assertEquals(encoder.encodeToString(BinaryUUID.toBytes(uuid)), encoded);
+            assertEquals(uuid, Base64UUID.decode(encoded));
+            assertEquals(encoded, Base64UUID.appendTo(uuid, new StringBuilder()).toString());
+
+            byte[] buf = new byte[Base64UUID.LENGTH + 2];
+            Base64UUID.encode(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), buf, 2);
+            assertEquals(encoded, new String(buf, 2, Base64UUID.LENGTH, StandardCharsets.US_ASCII));
+            assertEquals(uuid, Base64UUID.decode(buf, 2));
+        }
+    }
+
+    @Test
+    public void testExample()
+    {
+        UUID uuid = UUID.fromString("12345678-9abc-11ef-9012-3456789abc12");
+        assertEquals("EjRWeJq8Ee-QEjRWeJq8Eg", Base64UUID.encode(uuid));
+        assertEquals(uuid, Base64UUID.decode("key:EjRWeJq8Ee-QEjRWeJq8Eg".subSequence(4, 26)));
+    }
+
+    @Test
+    public void testStrict()
+    {
+        for (String bad : new String[] {
+                "",
+                "EjRWeJq8Ee-QEjRWeJq8E",
+                "EjRWeJq8Ee-QEjRWeJq8Eg=",
+                "EjRWeJq8Ee+QEjRWeJq8Eg",
+                "EjRWeJq8Ee-QEjRWeJq8Eh"}) {
+            try {
+                Base64UUID.decode(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
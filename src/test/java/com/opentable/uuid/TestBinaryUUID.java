@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TestBinaryUUID
+{
+    private static final UUID UUID_1 = UUID.fromString("00112233-4455-6677-8899-aabbccddeeff");
+    private static final byte[] BYTES_1 = {
+        0x00, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77,
+        (byte) 0x88, (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff };
+
+    @Test
+    public void testBigEndian()
+    {
+        assertArrayEquals(BYTES_1, BinaryUUID.toBytes(UUID_1));
+        assertEquals(UUID_1, BinaryUUID.fromBytes(BYTES_1));
+    }
+
+    @Test
+    public void testOffsets()
+    {
+        byte[] buf = new byte[3 + BinaryUUID.BYTES];
+        BinaryUUID.write(UUID_1, buf, 3);
+        assertEquals(UUID_1, BinaryUUID.read(buf, 3));
+        assertEquals(UUID_1.getMostSignificantBits(), BinaryUUID.getMostSignificantBits(buf, 3));
+        assertEquals(UUID_1.getLeastSignificantBits(), BinaryUUID.getLeastSignificantBits(buf, 3));
+        try {
+            BinaryUUID.read(buf, 4);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBuffers()
+    {
+        for (ByteBuffer buf : new ByteBuffer[] {
+                ByteBuffer.allocate(40), ByteBuffer.allocateDirect(40).order(ByteOrder.LITTLE_ENDIAN) }) {
+            buf.position(7);
+            BinaryUUID.write(UUID_1, buf, 5);
+            assertEquals(7, buf.position());
+            assertEquals(UUID_1, BinaryUUID.read(buf, 5));
+            assertEquals(UUID_1, BinaryUUID.read(buf.asReadOnlyBuffer(), 5));
+            byte[] copy = new byte[BinaryUUID.BYTES];
+            buf.position(5);
+            buf.get(copy);
+            assertArrayEquals(BYTES_1, copy);
+        }
+    }
+
+    @Test
+    public void testBulk()
+    {
+        Random random = new Random(7);
+        UUID[] uuids = new UUID[10];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        byte[] bytes = new byte[1 + uuids.length * BinaryUUID.BYTES];
+        BinaryUUID.writeAll(uuids, 0, bytes, 1, uuids.length);
+
+        long[] msb = new long[uuids.length];
+        long[] lsb = new long[uuids.length];
+        BinaryUUID.readAll(bytes, 1, msb, lsb, 0, uuids.length);
+        ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+        BinaryUUID.writeAll(msb, lsb, 0, buf, 1, uuids.length);
+
+        UUID[] read = new UUID[uuids.length];
+        BinaryUUID.readAll(buf, 1, read, 0, uuids.length);
+        assertArrayEquals(uuids, read);
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(uuids[i], BinaryUUID.read(bytes, 1 + i * BinaryUUID.BYTES));
+        }
+
+        try {
+            BinaryUUID.readAll(bytes, 2, read, 0, uuids.length);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TestFastUUID
+{
+    @Test
+    public void testRoundTripMatchesJdk()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            String str = FastUUID.toString(uuid);
+            assertEquals(uuid.toString(), str);
+            assertEquals(uuid, FastUUID.fromString(str));
+            assertEquals(uuid, FastUUID.fromString(str.toUpperCase()));
+        }
+        assertEquals("00000000-0000-0000-0000-000000000000", FastUUID.toString(new UUID(0, 0)));
+        assertEquals("ffffffff-ffff-ffff-ffff-ffffffffffff", FastUUID.toString(new UUID(-1, -1)));
+    }
+
+    @Test
+    public void testBuffers() throws IOException
+    {
+        Random random = new Random(43);
+        StringBuilder builder = new StringBuilder("id=");
+        StringWriter writer = new StringWriter();
+        byte[] bytes = new byte[2 + FastUUID.UUID_LENGTH];
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            builder.setLength(3);
+            assertEquals("id=" + uuid, FastUUID.appendTo(uuid, builder).toString());
+
+            writer.getBuffer().setLength(0);
+            FastUUID.appendTo(uuid, writer);
+            assertEquals(uuid.toString(), writer.toString());
+
+            FastUUID.writeAscii(uuid, bytes, 2);
+            assertEquals(uuid.toString(), new String(bytes, 2, FastUUID.UUID_LENGTH, StandardCharsets.US_ASCII));
+            assertEquals(uuid, FastUUID.readAscii(bytes, 2));
+        }
+
+        bytes[2 + 35] = (byte) 0xE9;
+        try {
+            FastUUID.readAscii(bytes, 2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        try {
+            FastUUID.readAscii(bytes, 3);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRange()
+    {
+        UUID uuid = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+        StringBuilder url = new StringBuilder("/restaurants/123e4567-e89b-12d3-a456-426614174000/menu");
+        assertEquals(uuid, FastUUID.fromCharSequence(url, 13, 49));
+    }
+
+    @Test
+    public void testStrict()
+    {
+        for (String bad : new String[] {
+                "",
+                "1-2-3-4-5",
+                "123e4567-e89b-12d3-a456-42661417400",
+                "123e4567-e89b-12d3-a456-4266141740000",
+                "123e4567e89b-12d3-a456-4266141740000",
+                "123e4567-e89b-12d3-a456_426614174000",
+                "123e4567-e89b-12d3-a456-42661417400g",
+                "+23e4567-e89b-12d3-a456-426614174000",
+                "123e4567-e89b-12d3-a456-42661417400\u0130",
+                "123e4567-e89b-12d3-a456-42661417400\uff10"}) {
+            try {
+                FastUUID.fromString(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRangeOutOfBounds()
+    {
+        FastUUID.fromCharSequence("123e4567-e89b-12d3-a456-426614174000", 1, 37);
+    }
+}
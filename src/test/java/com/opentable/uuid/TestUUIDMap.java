@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TestUUIDMap
+{
+    @Test
+    public void testMatchesHashMap()
+    {
+        Random random = new Random(11);
+        // Few distinct keys, including the nil UUID, so puts, overwrites and removes all collide often
+        UUID[] keys = new UUID[300];
+        keys[0] = new UUID(0, 0);
+        for (int i = 1; i < keys.length; i++) {
+            keys[i] = i % 2 == 0 ? new UUID(random.nextLong(), random.nextLong()) : new UUID(0, i);
+        }
+        UUIDMap<Integer> map = new UUIDMap<>();
+        Map<UUID, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            UUID key = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key.getMostSignificantBits(), key.getLeastSignificantBits()));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        Map<UUID, Integer> visited = new HashMap<>();
+        map.forEach((msb, lsb, value) -> visited.put(new UUID(msb, lsb), value));
+        assertEquals(expected, visited);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        for (UUID key : keys) {
+            assertNull(map.get(key));
+        }
+    }
+
+    @Test
+    public void testPutIfAbsent()
+    {
+        UUIDMap<String> map = new UUIDMap<>(1);
+        UUID key = UUID.randomUUID();
+        assertNull(map.putIfAbsent(key, "a"));
+        assertEquals("a", map.putIfAbsent(key, "b"));
+        assertEquals("a", map.get(key));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue()
+    {
+        new UUIDMap<String>().put(UUID.randomUUID(), null);
+    }
+
+    @Test
+    public void testSetMatchesHashSet()
+    {
+        Random random = new Random(13);
+        UUIDSet set = new UUIDSet();
+        Set<UUID> expected = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            UUID key = new UUID(random.nextInt(4), random.nextInt(200));
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (int msb = 0; msb < 4; msb++) {
+            for (int lsb = 0; lsb < 200; lsb++) {
+                assertEquals(expected.contains(new UUID(msb, lsb)), set.contains(msb, lsb));
+            }
+        }
+        Set<UUID> visited = new HashSet<>();
+        set.forEach((msb, lsb) -> assertTrue(visited.add(new UUID(msb, lsb))));
+        assertEquals(expected, visited);
+        set.clear();
+        assertFalse(set.contains(0, 0));
+        assertEquals(0, set.size());
+    }
+}
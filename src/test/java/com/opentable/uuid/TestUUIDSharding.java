@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import org.junit.Test;
+
+public class TestUUIDSharding
+{
+    @Test
+    public void testMatchesGuava()
+    {
+        Random random = new Random(23);
+        for (int i = 0; i < 10_000; i++) {
+            long key = random.nextLong();
+            int buckets = 1 + random.nextInt(i % 2 == 0 ? 10 : 100_000);
+            assertEquals(Hashing.consistentHash(key, buckets), UUIDSharding.jumpConsistentHash(key, buckets));
+        }
+    }
+
+    @Test
+    public void testEvenAndMinimalMovement()
+    {
+        UUIDv7Generator generator = new UUIDv7Generator(() -> 1_700_000_000_000L);
+        int[] counts = new int[10];
+        int moved = 0;
+        for (int i = 0; i < 100_000; i++) {
+            UUID uuid = generator.next();
+            int before = UUIDSharding.bucketOf(uuid, 10);
+            int after = UUIDSharding.bucketOf(uuid, 11);
+            counts[before]++;
+            if (before != after) {
+                assertEquals(10, after);
+                moved++;
+            }
+        }
+        for (int count : counts) {
+            assertTrue(Arrays.toString(counts), Math.abs(count - 10_000) < 500);
+        }
+        assertTrue(String.valueOf(moved), Math.abs(moved - 100_000 / 11) < 500);
+    }
+
+    @Test
+    public void testWeightedRendezvous()
+    {
+        Map<String, Double> weights = ImmutableMap.of("a", 1.0, "b", 2.0, "c", 1.0);
+        UUIDSharding.Weighted<String> all = UUIDSharding.weighted(weights.keySet(), n -> n, weights::get);
+        UUIDSharding.Weighted<String> withoutB = UUIDSharding.weighted(List.of("a", "c"), n -> n, weights::get);
+
+        Random random = new Random(29);
+        Map<String, int[]> counts = ImmutableMap.of("a", new int[1], "b", new int[1], "c", new int[1]);
+        for (int i = 0; i < 40_000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            String node = all.nodeFor(uuid);
+            counts.get(node)[0]++;
+            if (!node.equals("b")) {
+                assertEquals(node, withoutB.nodeFor(uuid));
+            }
+        }
+        assertTrue(Math.abs(counts.get("a")[0] - 10_000) < 500);
+        assertTrue(Math.abs(counts.get("b")[0] - 20_000) < 500);
+        assertTrue(Math.abs(counts.get("c")[0] - 10_000) < 500);
+    }
+}
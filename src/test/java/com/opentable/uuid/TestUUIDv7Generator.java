@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opentable.uuid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TestUUIDv7Generator
+{
+    @Test
+    public void testLayout()
+    {
+        UUIDv7Generator generator = new UUIDv7Generator(() -> 1_700_000_000_123L);
+        UUID uuid = generator.next();
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertEquals(1_700_000_000_123L, UUIDv7Generator.timestampOf(uuid));
+    }
+
+    @Test
+    public void testMonotonicWithinMillisecond()
+    {
+        AtomicLong clock = new AtomicLong(1000);
+        UUIDv7Generator generator = new UUIDv7Generator(clock::get);
+        UUID prev = generator.next();
+        for (int i = 0; i < 10_000; i++) {
+            UUID next = generator.next();
+            assertTrue(next.compareTo(prev) > 0);
+            prev = next;
+        }
+        // 4096 fit in a millisecond, after which the timestamp runs ahead of the clock
+        assertEquals(1002, UUIDv7Generator.timestampOf(prev));
+
+        clock.set(500);
+        assertTrue(generator.next().compareTo(prev) > 0);
+        clock.set(2000);
+        assertEquals(2000, UUIDv7Generator.timestampOf(generator.next()));
+    }
+
+    @Test
+    public void testNextN()
+    {
+        UUIDv7Generator generator = new UUIDv7Generator(() -> 1000);
+        UUID before = generator.next();
+        long[] msb = new long[100];
+        long[] lsb = new long[100];
+        generator.nextN(msb, lsb);
+        UUID prev = before;
+        for (int i = 0; i < msb.length; i++) {
+            UUID uuid = new UUID(msb[i], lsb[i]);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            assertTrue(uuid.compareTo(prev) > 0);
+            prev = uuid;
+        }
+        assertTrue(generator.next().compareTo(prev) > 0);
+    }
+
+    @Test
+    public void testConcurrentThreadsAreOrderedAndUnique() throws Exception
+    {
+        UUIDv7Generator generator = UUIDv7Generator.create();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<UUID>>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    List<UUID> generated = new ArrayList<>();
+                    for (int i = 0; i < 10_000; i++) {
+                        generated.add(generator.next());
+                    }
+                    return generated;
+                }));
+            }
+            Set<Long> seen = new HashSet<>();
+            for (Future<List<UUID>> result : results) {
+                UUID prev = new UUID(0, 0);
+                for (UUID uuid : result.get()) {
+                    assertTrue(uuid.compareTo(prev) > 0);
+                    assertTrue(seen.add(uuid.getMostSignificantBits()));
+                    prev = uuid;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}